@@ -0,0 +1,189 @@
+import bench.BotTarget;
+import org.json.JSONObject;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+// Default-package side of the bench bridge (see bench.BotTarget).
+public final class BenchTarget implements BotTarget {
+
+    static final String SECRET = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private static final String STATE_KEY = "BENCH|1H";
+
+    private final HmacSigner signer = new HmacSigner(SECRET);
+
+    private CandleSeries candles;
+
+    public BenchTarget() {}
+
+    @Override
+    public String signCached(String payload) {
+        return signer.sign(payload);
+    }
+
+    // The pre-HmacSigner sign(): fresh Mac + init per call, String.format hex.
+    @Override
+    public String signLegacy(String payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] b = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte x : b) sb.append(String.format("%02x", x));
+            return sb.toString();
+        } catch (Exception e) {
+            throw new RuntimeException("HMAC sign failed", e);
+        }
+    }
+
+    @Override
+    public void loadCandles(long[] time, double[] open, double[] high, double[] low, double[] close,
+                            double[] volume) {
+        candles = new CandleSeries(time, open, high, low, close, volume, 0, time.length);
+        // Seed the keyed state so analyzeTFIncremental() measures the
+        // steady-state call (state already at the last bar).
+        CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.analyzeTF(STATE_KEY, candles);
+    }
+
+    // Unkeyed: seeds a throwaway IndicatorState over the whole window, i.e.
+    // the cost of a pair's first scan.
+    @Override
+    public Object analyzeTFCold() {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.analyzeTF(null, candles);
+    }
+
+    @Override
+    public Object analyzeTFIncremental() {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.analyzeTF(STATE_KEY, candles);
+    }
+
+    @Override
+    public Object aggregateCandles(int groupSize) {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.aggregateCandles(candles, groupSize);
+    }
+
+    @Override
+    public double[] extractCloses() {
+        return candles.closes();
+    }
+
+    @Override
+    public Object parseCandles(byte[] json) {
+        try {
+            return ExchangeJson.parseCandles(new ByteArrayInputStream(json));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public double[] calcSupertrendBands(double[] hi, double[] lo, double[] cl) {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.calcSupertrendBands(hi, lo, cl, 10, 3.0);
+    }
+
+    @Override
+    public boolean[] calcSupertrend(double[] hi, double[] lo, double[] cl) {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.calcSupertrend(hi, lo, cl, 10, 3.0);
+    }
+
+    @Override
+    public double[] calcATRSeries(double[] hi, double[] lo, double[] cl) {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.calcATRSeries(hi, lo, cl, 14);
+    }
+
+    @Override
+    public double calcEMA(double[] data) {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.calcEMA(data, 21);
+    }
+
+    @Override
+    public BigDecimal roundToTickBD(double price, double tick) {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.roundToTickBD(price, tick);
+    }
+
+    @Override
+    public Object tick(double size) {
+        return TickMath.Tick.of(size);
+    }
+
+    @Override
+    public double roundToTick(double price, Object tick) {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.roundToTick(price, (TickMath.Tick) tick);
+    }
+
+    @Override
+    public String roundToTickJson(double price, Object tick) {
+        return JSONObject.valueToString(TickMath.json(price, (TickMath.Tick) tick));
+    }
+
+    @Override
+    public String[] tradedPairs() {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.COINS_TO_TRADE.clone();
+    }
+
+    @Override
+    public void runEntryScan() {
+        CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.runEntryScan();
+    }
+
+    @Override
+    public CompletableFuture<String> orderAsync(String pair) {
+        double price = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.getLastPrice(pair);
+        if (price <= 0) return CompletableFuture.completedFuture("no price");
+        JSONObject resp = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.placeFuturesOrder(
+                "buy", pair, CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.instrumentId(pair), 1, 15,
+                "email_notification", "isolated", "INR", price);
+        if (resp == null || !resp.has("id")) return CompletableFuture.completedFuture("order failed");
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.orderPipeline
+                .track(pair, resp.getString("id"), entry -> new double[] { entry * 0.98, entry * 1.02 })
+                .thenApply(o -> o.stage.toString());
+    }
+
+    @Override
+    public void startProtectionWorker() {
+        CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.startProtectionWorker();
+    }
+
+    @Override
+    public String protectionStats() {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.protectionStats();
+    }
+
+    @Override
+    public void startMarketStream() {
+        CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.startMarketStream();
+    }
+
+    @Override
+    public double lastPrice(String pair) {
+        return CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.getLastPrice(pair);
+    }
+
+    @Override
+    public String orderRoundTrip(String pair) {
+        try {
+            double price = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.getLastPrice(pair);
+            if (price <= 0) return "no price";
+            JSONObject resp = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.placeFuturesOrder(
+                    "buy", pair, CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.instrumentId(pair), 1, 15,
+                    "email_notification", "isolated", "INR", price);
+            if (resp == null || !resp.has("id")) return "order failed";
+            double entry = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.getEntryPrice(pair, resp.getString("id"));
+            if (entry <= 0) return "no fill";
+            String posId = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.getPositionId(pair);
+            if (posId == null) return "no position id";
+            boolean ok = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.setTpSlWithRetry(
+                    posId, entry * 1.02, entry * 0.98, pair);
+            return ok ? "ok" : "tpsl unconfirmed";
+        } catch (Exception e) {
+            return "error: " + e.getMessage();
+        }
+    }
+}
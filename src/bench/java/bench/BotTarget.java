@@ -0,0 +1,55 @@
+package bench;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+// JMH won't generate benchmarks for classes in the default package, and the
+// bot lives there, so the benchmarks (package bench) reach it through this
+// interface. BenchTarget (default package, same source root) implements it
+// against the real code and is loaded reflectively by BotTargets.
+public interface BotTarget {
+
+    // ---- request signing -------------------------------------------------
+    String signCached(String payload);
+    String signLegacy(String payload);
+
+    // ---- strategy math ---------------------------------------------------
+    // Candle-based calls run on the series passed to loadCandles(); array
+    // indicators use the bot's own periods (ATR/Supertrend/EMA constants).
+    void loadCandles(long[] time, double[] open, double[] high, double[] low, double[] close, double[] volume);
+
+    Object analyzeTFCold();
+    Object analyzeTFIncremental();
+    Object aggregateCandles(int groupSize);
+    double[] extractCloses();
+    Object parseCandles(byte[] json);
+
+    double[]  calcSupertrendBands(double[] hi, double[] lo, double[] cl);
+    boolean[] calcSupertrend(double[] hi, double[] lo, double[] cl);
+    double[]  calcATRSeries(double[] hi, double[] lo, double[] cl);
+    double    calcEMA(double[] data);
+
+    BigDecimal roundToTickBD(double price, double tick);
+    // An instrument's precomputed tick (a TickMath.Tick), for the two below.
+    Object tick(double size);
+    double roundToTick(double price, Object tick);
+    // The JSON text the order / create_tpsl payload gets for the price.
+    String roundToTickJson(double price, Object tick);
+
+    // ---- end-to-end (against bench.MockExchange) --------------------------
+    // The bot reads its URLs/keys when its class initialises, so the system
+    // properties must be set before BotTargets.load().
+    String[] tradedPairs();
+    void runEntryScan();
+    // order -> fill -> position id -> TP/SL confirmed; returns a short status.
+    String orderRoundTrip(String pair);
+    // Same lifecycle through the bot's OrderPipeline; returns once the order
+    // is placed, the future completes with the final stage.
+    CompletableFuture<String> orderAsync(String pair);
+    void startProtectionWorker();
+    String protectionStats();
+
+    // ---- market stream (against bench.MockStream) -------------------------
+    void startMarketStream();
+    double lastPrice(String pair);
+}
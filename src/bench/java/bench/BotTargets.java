@@ -0,0 +1,14 @@
+package bench;
+
+final class BotTargets {
+
+    private BotTargets() {}
+
+    static BotTarget load() {
+        try {
+            return (BotTarget) Class.forName("BenchTarget").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchTarget not on the classpath", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Deterministic synthetic 1h candles: a trending random walk with realistic
+// wicks, so Supertrend flips and EMA crosses actually happen.
+final class Candles {
+
+    final long[]   time;
+    final double[] open, high, low, close, volume;
+
+    Candles(int n, long seed) {
+        Random r = new Random(seed);
+        time = new long[n];
+        open = new double[n]; high = new double[n]; low = new double[n];
+        close = new double[n]; volume = new double[n];
+        long t0 = 1_700_000_000_000L - 1_700_000_000_000L % 3_600_000L;
+        double price = 0.5 + r.nextDouble();
+        double drift = 0;
+        for (int i = 0; i < n; i++) {
+            if (i % 50 == 0) drift = (r.nextDouble() - 0.5) * 0.004;
+            double o = price;
+            double c = o * (1 + drift + r.nextGaussian() * 0.01);
+            time[i]   = t0 + i * 3_600_000L;
+            open[i]   = o;
+            close[i]  = c;
+            high[i]   = Math.max(o, c) * (1 + Math.abs(r.nextGaussian()) * 0.004);
+            low[i]    = Math.min(o, c) * (1 - Math.abs(r.nextGaussian()) * 0.004);
+            volume[i] = 1_000 + r.nextInt(50_000);
+            price = c;
+        }
+    }
+
+    // Same shape as the /market_data/candlesticks response.
+    byte[] json() {
+        StringBuilder sb = new StringBuilder(time.length * 120).append("{\"s\":\"ok\",\"data\":[");
+        for (int i = 0; i < time.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"open\":").append(open[i])
+              .append(",\"high\":").append(high[i])
+              .append(",\"low\":").append(low[i])
+              .append(",\"volume\":").append(volume[i])
+              .append(",\"close\":").append(close[i])
+              .append(",\"time\":").append(time[i]).append('}');
+        }
+        return sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,170 @@
+package bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// =============================================================================
+// Offline end-to-end run of the bot against MockExchange: full entry scans
+// (scan throughput) and a batch of order round trips (order-path latency).
+//
+//   mvn -B -Pbench package
+//   java -cp target/short-order-bot-1.0-SNAPSHOT-jar-with-dependencies.jar bench.ExchangeLoadDriver \
+//        --latency-ms 40 --jitter-ms 30 --error-rate 0.01 --throttle-rate 0.01 --fill-delay-ms 300 \
+//        --scans 3 --orders 5 \
+//        --stream-tick-ms 250 --price-reads 2000 --unprotected 5 --async-orders 10
+//
+// --stream-tick-ms > 0 also starts MockStream and the bot's MarketStream,
+// then times --price-reads getLastPrice calls with the stream up and again
+// after dropping it (REST fallback).
+//
+// --unprotected N > 0 starts the bot's ProtectionWorker, then opens N
+// positions without TP/SL on the mock in the middle of an extra entry scan
+// and times how long until all of them carry TP/SL.
+//
+// --async-orders N > 0 places N orders back to back through the bot's
+// OrderPipeline: how long the caller is held up vs. until all are protected.
+// =============================================================================
+public final class ExchangeLoadDriver {
+
+    public static void main(String[] args) throws Exception {
+        MockExchange.Config cfg = new MockExchange.Config();
+        int scans = 2, orders = 3, priceReads = 1000, unprotected = 0, asyncOrders = 0;
+        long streamTickMs = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--latency-ms":    cfg.latencyMs   = Long.parseLong(v);     break;
+                case "--jitter-ms":     cfg.jitterMs    = Long.parseLong(v);     break;
+                case "--error-rate":    cfg.errorRate   = Double.parseDouble(v); break;
+                case "--throttle-rate": cfg.throttleRate = Double.parseDouble(v); break;
+                case "--fill-delay-ms": cfg.fillDelayMs = Long.parseLong(v);     break;
+                case "--scans":         scans  = Integer.parseInt(v);            break;
+                case "--orders":        orders = Integer.parseInt(v);            break;
+                case "--stream-tick-ms": streamTickMs = Long.parseLong(v);       break;
+                case "--price-reads":   priceReads = Integer.parseInt(v);        break;
+                case "--unprotected":   unprotected = Integer.parseInt(v);       break;
+                case "--async-orders":  asyncOrders = Integer.parseInt(v);       break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        // Pair list comes from the bot itself, but the bot must not be
+        // initialised before the URLs are set — so start the mock on a
+        // placeholder list and fill it in right after.
+        List<String> pairs = new ArrayList<>();
+        try (MockExchange mock = new MockExchange(cfg, pairs);
+             MockStream stream = streamTickMs > 0 ? new MockStream(streamTickMs) : null) {
+            File state = File.createTempFile("trail_state", ".json");
+            state.deleteOnExit();
+            System.setProperty("coindcx.baseUrl",   mock.url());
+            System.setProperty("coindcx.publicUrl", mock.url());
+            System.setProperty("delta.apiKey",      "mock-key");
+            System.setProperty("delta.apiSecret",   "mock-secret");
+            System.setProperty("trail.stateFile",   state.getAbsolutePath());
+            File instruments = new File(state.getParentFile(), state.getName() + ".instruments.json");
+            instruments.deleteOnExit();
+            System.setProperty("instruments.cacheFile", instruments.getAbsolutePath());
+            File ledger = new File(state.getParentFile(), state.getName() + ".ledger.jsonl");
+            ledger.deleteOnExit();
+            System.setProperty("ledger.file", ledger.getAbsolutePath());
+            if (stream != null) System.setProperty("coindcx.streamUrl", stream.url());
+
+            BotTarget bot = BotTargets.load();
+            String[] traded = bot.tradedPairs();
+            pairs.addAll(Arrays.asList(traded));
+
+            long[] scanMs = new long[scans];
+            for (int i = 0; i < scans; i++) {
+                long t0 = System.nanoTime();
+                bot.runEntryScan();
+                scanMs[i] = (System.nanoTime() - t0) / 1_000_000L;
+            }
+
+            long[] orderMs = new long[orders];
+            List<String> outcomes = new ArrayList<>();
+            for (int i = 0; i < orders; i++) {
+                String pair = traded[traded.length - 1 - i];
+                long t0 = System.nanoTime();
+                outcomes.add(pair + "=" + bot.orderRoundTrip(pair));
+                orderMs[i] = (System.nanoTime() - t0) / 1_000_000L;
+            }
+
+            String asyncReport = null;
+            if (asyncOrders > 0) {
+                List<CompletableFuture<String>> pending = new ArrayList<>();
+                long t0 = System.nanoTime();
+                for (int i = 0; i < asyncOrders; i++) {
+                    String pair = traded[traded.length - 1 - orders - i];
+                    pending.add(bot.orderAsync(pair).thenApply(s -> pair + "=" + s));
+                }
+                long placedMs = (System.nanoTime() - t0) / 1_000_000L;
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+                long doneMs = (System.nanoTime() - t0) / 1_000_000L;
+                List<String> settled = new ArrayList<>();
+                for (CompletableFuture<String> f : pending) settled.add(f.join());
+                asyncReport = String.format("%d async orders: caller free after %d ms, all settled after %d ms  %s",
+                        asyncOrders, placedMs, doneMs, settled);
+            }
+
+            String protectReport = null;
+            if (unprotected > 0) {
+                bot.startProtectionWorker();
+                Thread scan = new Thread(bot::runEntryScan, "bench-scan");
+                scan.start();
+                Thread.sleep(1_000); // scan well under way
+                long t0 = System.nanoTime();
+                for (int i = 0; i < unprotected; i++) mock.openUnprotected(traded[i]);
+                long deadline = System.currentTimeMillis() + 60_000;
+                while (mock.unprotectedPositions() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+                long protectMs = (System.nanoTime() - t0) / 1_000_000L;
+                boolean scanRunning = scan.isAlive();
+                scan.join();
+                protectReport = String.format("%d unprotected positions -> %s after %d ms (scan still running: %s) | %s",
+                        unprotected, mock.unprotectedPositions() == 0 ? "all protected" : "NOT all protected",
+                        protectMs, scanRunning, bot.protectionStats());
+            }
+
+            String priceReport = null;
+            if (stream != null) {
+                bot.startMarketStream();
+                Thread.sleep(3 * streamTickMs + 500); // connect, join, first trades
+                long streamedNs = timePriceReads(bot, traded, priceReads);
+                stream.dropConnections();
+                Thread.sleep(500); // let the client see the close
+                long restNs = timePriceReads(bot, traded, priceReads);
+                priceReport = String.format("getLastPrice x%d: stream up %.2f us/read | stream dropped %.2f us/read (%d trades streamed)",
+                        priceReads, streamedNs / 1e3 / priceReads, restNs / 1e3 / priceReads, stream.tradesSent());
+            }
+
+            System.out.println();
+            System.out.println("==== Mock exchange run ====");
+            System.out.printf("latency=%dms(+%d) error-rate=%.3f throttle-rate=%.3f fill-delay=%dms pairs=%d%n",
+                    cfg.latencyMs, cfg.jitterMs, cfg.errorRate, cfg.throttleRate, cfg.fillDelayMs, traded.length);
+            for (int i = 0; i < scans; i++) {
+                System.out.printf("scan %d: %d ms (%.1f pairs/s)%n", i + 1, scanMs[i],
+                        scanMs[i] == 0 ? 0.0 : traded.length * 1000.0 / scanMs[i]);
+            }
+            if (orders > 0) {
+                long[] sorted = orderMs.clone();
+                Arrays.sort(sorted);
+                System.out.printf("order round trip: p50=%d ms max=%d ms  %s%n",
+                        sorted[sorted.length / 2], sorted[sorted.length - 1], outcomes);
+            }
+            if (asyncReport != null) System.out.println(asyncReport);
+            if (protectReport != null) System.out.println(protectReport);
+            if (priceReport != null) System.out.println(priceReport);
+            System.out.println("open mock positions: " + mock.openPositions());
+            System.out.println("requests by endpoint:");
+            System.out.print(mock.stats());
+        }
+    }
+
+    private static long timePriceReads(BotTarget bot, String[] pairs, int reads) {
+        long t0 = System.nanoTime();
+        for (int i = 0; i < reads; i++) bot.lastPrice(pairs[i % pairs.length]);
+        return System.nanoTime() - t0;
+    }
+}
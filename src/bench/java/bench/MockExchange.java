@@ -0,0 +1,333 @@
+package bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// In-process stand-in for the CoinDCX REST endpoints the bot uses, on the
+// JDK's built-in HttpServer. Public and private endpoints are served from
+// the same port, so both coindcx.baseUrl and coindcx.publicUrl point here.
+//
+//   GET  /market_data/candlesticks                          synthetic OHLCV
+//   GET  /market_data/trade_history                         last price
+//   GET  /exchange/v1/derivatives/futures/data/active_instruments
+//   GET  /exchange/v1/derivatives/futures/data/instrument   price_increment
+//   POST /exchange/v1/derivatives/futures/positions         paged positions
+//   POST /exchange/v1/derivatives/futures/orders/create     opens a position
+//   POST /exchange/v1/derivatives/futures/positions/create_tpsl
+//
+// Prices are a deterministic function of (pair, time), so overlapping
+// candle fetches (the incremental tail in CandleCache) always agree, and
+// every resolution is consistent with every other one.
+//
+// Every request first sleeps latencyMs (+ up to jitterMs), then fails with
+// HTTP 500 with probability errorRate, or is refused with 429 (Retry-After:
+// 1) with probability throttleRate. Orders fill after fillDelayMs.
+// Signatures are not checked.
+// =============================================================================
+public final class MockExchange implements AutoCloseable {
+
+    static final class Config {
+        long   latencyMs   = 0;
+        long   jitterMs    = 0;
+        double errorRate   = 0.0;
+        double throttleRate = 0.0;
+        long   fillDelayMs = 0;
+    }
+
+    private static final class MockPosition {
+        final String id, pair;
+        final double qty, avgPrice;
+        final long   filledAt;
+        volatile double tp, sl;
+
+        MockPosition(String id, String pair, double qty, double avgPrice, long filledAt) {
+            this.id = id;
+            this.pair = pair;
+            this.qty = qty;
+            this.avgPrice = avgPrice;
+            this.filledAt = filledAt;
+        }
+    }
+
+    private final Config config;
+    private final List<String> pairs;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final Map<String, MockPosition> positions = new ConcurrentHashMap<>();
+    private final AtomicLong orderSeq = new AtomicLong();
+
+    private final Map<String, AtomicLong> hits = new ConcurrentHashMap<>();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injected429s   = new AtomicLong();
+
+    MockExchange(Config config, List<String> pairs) throws IOException {
+        this.config  = config;
+        this.pairs   = pairs;
+        this.server  = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        this.workers = Executors.newFixedThreadPool(64, r -> {
+            Thread t = new Thread(r, "mock-exchange");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(workers);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    int openPositions() {
+        return positions.size();
+    }
+
+    // A filled position with no TP/SL, as if opened outside the bot's flow.
+    void openUnprotected(String pair) {
+        String id = "pos-ext-" + orderSeq.incrementAndGet();
+        positions.put(pair, new MockPosition(id, pair, 1, price(pair, System.currentTimeMillis() / 1000L), 0));
+    }
+
+    int unprotectedPositions() {
+        int n = 0;
+        for (MockPosition p : positions.values()) if (p.tp <= 0 || p.sl <= 0) n++;
+        return n;
+    }
+
+    String stats() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(hits).forEach((k, v) -> sb.append(String.format("  %-60s %6d%n", k, v.get())));
+        sb.append(String.format("  injected errors: %d | injected 429s: %d%n", injectedErrors.get(), injected429s.get()));
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    // -------------------------------------------------------------------------
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            route(ex);
+        } catch (RuntimeException e) {
+            send(ex, 400, new JSONObject().put("code", 400).put("message", String.valueOf(e.getMessage())).toString());
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void route(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getPath();
+        hits.computeIfAbsent(path, k -> new AtomicLong()).incrementAndGet();
+        byte[] reqBody = ex.getRequestBody().readAllBytes();
+
+        long delay = config.latencyMs
+                + (config.jitterMs > 0 ? ThreadLocalRandom.current().nextLong(config.jitterMs + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (config.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < config.errorRate) {
+            injectedErrors.incrementAndGet();
+            send(ex, 500, "{\"code\":500,\"message\":\"injected error\"}");
+            return;
+        }
+        if (config.throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < config.throttleRate) {
+            injected429s.incrementAndGet();
+            ex.getResponseHeaders().set("Retry-After", "1");
+            send(ex, 429, "{\"code\":429,\"message\":\"too many requests\"}");
+            return;
+        }
+
+        Map<String, String> q = query(ex.getRequestURI());
+        String body = new String(reqBody, StandardCharsets.UTF_8);
+        switch (path) {
+            case "/market_data/candlesticks":
+                send(ex, 200, candles(q.get("pair"), Long.parseLong(q.get("from")),
+                        Long.parseLong(q.get("to")), Integer.parseInt(q.getOrDefault("resolution", "15"))));
+                break;
+            case "/market_data/trade_history":
+                send(ex, 200, "[{\"p\":" + price(q.get("pair"), System.currentTimeMillis() / 1000L)
+                        + ",\"q\":1,\"s\":\"" + q.get("pair") + "\",\"T\":" + System.currentTimeMillis() + "}]");
+                break;
+            case "/exchange/v1/derivatives/futures/data/active_instruments":
+                send(ex, 200, new JSONArray(pairs).toString());
+                break;
+            case "/exchange/v1/derivatives/futures/data/instrument":
+                send(ex, 200, instrument(q.get("pair")));
+                break;
+            case "/exchange/v1/derivatives/futures/positions":
+                send(ex, 200, positions(new JSONObject(body)));
+                break;
+            case "/exchange/v1/derivatives/futures/orders/create":
+                send(ex, 200, createOrder(new JSONObject(body).getJSONObject("order")));
+                break;
+            case "/exchange/v1/derivatives/futures/positions/create_tpsl":
+                send(ex, 200, createTpSl(new JSONObject(body)));
+                break;
+            default:
+                send(ex, 404, "{\"code\":404,\"message\":\"not found\"}");
+        }
+    }
+
+    private static void send(HttpExchange ex, int code, String body) throws IOException {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(code, b.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(b);
+        }
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> q = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) return q;
+        for (String kv : raw.split("&")) {
+            int i = kv.indexOf('=');
+            if (i > 0) q.put(kv.substring(0, i), kv.substring(i + 1));
+        }
+        return q;
+    }
+
+    // ---- synthetic market ----------------------------------------------------
+
+    private static double basePrice(String pair) {
+        int h = pair.hashCode() & 0x7fffffff;
+        return Math.pow(10, h % 5 - 2) * (1 + (h % 1000) / 1000.0);
+    }
+
+    static double tick(String pair) {
+        return Math.pow(10, Math.floor(Math.log10(basePrice(pair))) - 4);
+    }
+
+    // Two slow swings (days / weeks) plus hourly-scale wiggle: enough trend
+    // for the 4H/2H gates to pass now and then, enough noise for pullbacks.
+    static double price(String pair, long epochSec) {
+        int h = pair.hashCode();
+        double t = epochSec / 3600.0;
+        double slow = 0.12 * Math.sin(t / 90.0 + (h & 0xff));
+        double mid  = 0.04 * Math.sin(t / 17.0 + ((h >> 8) & 0xff));
+        double fast = 0.01 * Math.sin(t / 1.3 + ((h >> 16) & 0xff));
+        return basePrice(pair) * (1 + slow + mid + fast);
+    }
+
+    private static String candles(String pair, long fromSec, long toSec, int resolutionMin) {
+        long bar = resolutionMin * 60L;
+        long first = (fromSec + bar - 1) / bar * bar;
+        StringBuilder sb = new StringBuilder(256 + (int) Math.max(0, (toSec - first) / bar) * 120);
+        sb.append("{\"s\":\"ok\",\"data\":[");
+        boolean comma = false;
+        for (long t = first; t <= toSec; t += bar) {
+            double o = price(pair, t);
+            double c = price(pair, Math.min(t + bar, toSec));
+            double wick = basePrice(pair) * 0.002;
+            double hi = Math.max(o, c), lo = Math.min(o, c);
+            for (long s = t + bar / 4; s < Math.min(t + bar, toSec); s += bar / 4) {
+                double p = price(pair, s);
+                hi = Math.max(hi, p);
+                lo = Math.min(lo, p);
+            }
+            if (comma) sb.append(',');
+            comma = true;
+            sb.append("{\"open\":").append(o)
+              .append(",\"high\":").append(hi + wick)
+              .append(",\"low\":").append(lo - wick)
+              .append(",\"volume\":").append(1000 + (t / bar) % 977)
+              .append(",\"close\":").append(c)
+              .append(",\"time\":").append(t * 1000L).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String instrument(String pair) {
+        JSONObject inst = new JSONObject();
+        inst.put("pair", pair);
+        inst.put("price_increment", BigDecimal.valueOf(tick(pair)).stripTrailingZeros());
+        inst.put("quantity_increment", basePrice(pair) < 1 ? 1 : 0.001);
+        inst.put("min_notional", 1);
+        inst.put("max_leverage_long", 20);
+        inst.put("status", "active");
+        return new JSONObject().put("instrument", inst).toString();
+    }
+
+    // ---- account ---------------------------------------------------------------
+
+    private String positions(JSONObject req) {
+        int page = Integer.parseInt(req.optString("page", "1"));
+        int size = Integer.parseInt(req.optString("size", "100"));
+        long now = System.currentTimeMillis();
+        List<MockPosition> filled = new ArrayList<>();
+        for (MockPosition p : positions.values()) {
+            if (p.filledAt <= now) filled.add(p);
+        }
+        filled.sort((a, b) -> a.id.compareTo(b.id));
+        JSONArray out = new JSONArray();
+        for (int i = (page - 1) * size; i < Math.min(filled.size(), page * size); i++) {
+            MockPosition p = filled.get(i);
+            JSONObject o = new JSONObject();
+            o.put("id", p.id);
+            o.put("pair", p.pair);
+            o.put("active_pos", p.qty);
+            o.put("avg_price", p.avgPrice);
+            o.put("locked_margin", p.avgPrice * Math.abs(p.qty) / 15);
+            o.put("take_profit_trigger", p.tp > 0 ? p.tp : JSONObject.NULL);
+            o.put("stop_loss_trigger", p.sl > 0 ? p.sl : JSONObject.NULL);
+            out.put(o);
+        }
+        return out.toString();
+    }
+
+    private String createOrder(JSONObject order) {
+        String pair = order.getString("pair");
+        double qty  = order.getDouble("total_quantity");
+        if ("sell".equals(order.getString("side"))) qty = -qty;
+        String id = "mock-" + orderSeq.incrementAndGet();
+        long filledAt = System.currentTimeMillis() + config.fillDelayMs;
+        positions.put(pair, new MockPosition("pos-" + id, pair, qty, order.getDouble("price"), filledAt));
+        JSONObject o = new JSONObject();
+        o.put("id", id);
+        o.put("pair", pair);
+        o.put("status", "initial");
+        return new JSONArray().put(o).toString();
+    }
+
+    private String createTpSl(JSONObject req) {
+        String id = req.getString("id");
+        for (MockPosition p : positions.values()) {
+            if (p.id.equals(id)) {
+                p.tp = req.getJSONObject("take_profit").getDouble("stop_price");
+                p.sl = req.getJSONObject("stop_loss").getDouble("stop_price");
+                return new JSONObject().put("id", id).put("status", "ok").toString();
+            }
+        }
+        return new JSONObject().put("err_code_dcx", 404).put("message", "position not found").toString();
+    }
+}
@@ -0,0 +1,121 @@
+package bench;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// Stand-in for the CoinDCX socket.io trade stream, on OkHttp's MockWebServer.
+// Speaks just enough Engine.IO v4 for MarketStream: the "0" open packet,
+// "40" namespace connect, "2"/"3" ping, and "join" subscriptions. Every
+// tickMs each joined pair gets a "new-trade" event priced from
+// MockExchange.price(), so streamed and REST prices agree.
+//
+// dropConnections() closes every socket from the server side, to watch the
+// client fall back to REST and reconnect.
+// =============================================================================
+public final class MockStream implements AutoCloseable {
+
+    private final MockWebServer server = new MockWebServer();
+    private final Map<WebSocket, Set<String>> sockets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "mock-stream");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong sent = new AtomicLong();
+
+    MockStream(long tickMs) throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().withWebSocketUpgrade(new Session());
+            }
+        });
+        server.start();
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    String url() {
+        return "ws://" + server.getHostName() + ":" + server.getPort();
+    }
+
+    long tradesSent() {
+        return sent.get();
+    }
+
+    void dropConnections() {
+        for (WebSocket ws : sockets.keySet()) ws.close(1001, "going away");
+        sockets.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        ticker.shutdownNow();
+        dropConnections();
+        server.shutdown();
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        sockets.forEach((ws, joined) -> {
+            for (String pair : joined) {
+                JSONObject trade = new JSONObject()
+                        .put("p", MockExchange.price(pair, now / 1000L))
+                        .put("q", 1)
+                        .put("s", pair)
+                        .put("T", now);
+                ws.send("42" + new JSONArray().put("new-trade").put(new JSONObject().put("data", trade.toString())));
+                sent.incrementAndGet();
+            }
+        });
+    }
+
+    private final class Session extends WebSocketListener {
+        @Override
+        public void onOpen(WebSocket ws, Response response) {
+            ws.send("0{\"sid\":\"mock\",\"upgrades\":[],\"pingInterval\":25000,\"pingTimeout\":20000}");
+        }
+
+        @Override
+        public void onMessage(WebSocket ws, String text) {
+            if (text.equals("40")) {
+                sockets.put(ws, ConcurrentHashMap.newKeySet());
+                ws.send("40{\"sid\":\"mock-ns\"}");
+            } else if (text.startsWith("42")) {
+                JSONArray ev = new JSONArray(text.substring(2));
+                if ("join".equals(ev.optString(0))) {
+                    String channel = ev.getJSONObject(1).getString("channelName");
+                    Set<String> joined = sockets.get(ws);
+                    if (joined != null) joined.add(channel.substring(0, channel.indexOf('@')));
+                }
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket ws, int code, String reason) {
+            sockets.remove(ws);
+            ws.close(1000, null);
+        }
+
+        @Override
+        public void onFailure(WebSocket ws, Throwable t, Response response) {
+            sockets.remove(ws);
+        }
+    }
+}
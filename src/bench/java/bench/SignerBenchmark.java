@@ -0,0 +1,65 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Per-request signing cost: cached per-thread Mac + table hex (HmacSigner)
+// vs. the old getInstance/init/String.format path. Run with -prof gc to see
+// the allocation difference. The *_parallel variants sign from 16 threads,
+// the scan executor's width.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignerBenchmark {
+
+    // Shape of a real /futures/positions body.
+    private static final String PAYLOAD =
+            "{\"timestamp\":1760000000000,\"page\":\"1\",\"size\":\"100\","
+            + "\"margin_currency_short_name\":[\"INR\",\"USDT\"]}";
+
+    private BotTarget target;
+
+    @Setup
+    public void setup() {
+        target = BotTargets.load();
+        if (!target.signCached(PAYLOAD).equals(target.signLegacy(PAYLOAD))) {
+            throw new IllegalStateException("HmacSigner output differs from the legacy sign()");
+        }
+    }
+
+    @Benchmark
+    public String cached() {
+        return target.signCached(PAYLOAD);
+    }
+
+    @Benchmark
+    public String legacy() {
+        return target.signLegacy(PAYLOAD);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String cached_parallel() {
+        return target.signCached(PAYLOAD);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String legacy_parallel() {
+        return target.signLegacy(PAYLOAD);
+    }
+}
@@ -0,0 +1,125 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+// Strategy-math hot paths on a realistic window (HTF_1H_FETCH_COUNT = 700
+// bars). Run with -prof gc for the allocation rate next to ns/op:
+//   java -cp target/*-jar-with-dependencies.jar org.openjdk.jmh.Main StrategyBenchmark -prof gc
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StrategyBenchmark {
+
+    @Param({"700"})
+    int bars;
+
+    private BotTarget target;
+    private Candles   candles;
+    private byte[]    json;
+
+    // A handful of price/tick combinations cycled through, so the rounding
+    // benchmarks aren't measured on one constant-folded input.
+    private static final double[] PRICES = {0.026099999999999998, 1.23456789, 64123.4567, 0.000123456, 3.3};
+    private static final double[] TICKS  = {0.00001, 0.0001, 0.1, 0.0000001, 0.001};
+    private Object[] ticks; // TICKS as the bot's precomputed ticks
+    private int roundIdx;
+
+    @Setup
+    public void setup() {
+        target  = BotTargets.load();
+        candles = new Candles(bars, 42L);
+        json    = candles.json();
+        target.loadCandles(candles.time, candles.open, candles.high, candles.low, candles.close, candles.volume);
+        ticks = new Object[TICKS.length];
+        for (int i = 0; i < TICKS.length; i++) ticks[i] = target.tick(TICKS[i]);
+    }
+
+    @Benchmark
+    public Object analyzeTF_cold() {
+        return target.analyzeTFCold();
+    }
+
+    @Benchmark
+    public Object analyzeTF_incremental() {
+        return target.analyzeTFIncremental();
+    }
+
+    @Benchmark
+    public boolean[] calcSupertrend() {
+        return target.calcSupertrend(candles.high, candles.low, candles.close);
+    }
+
+    @Benchmark
+    public double[] calcSupertrendBands() {
+        return target.calcSupertrendBands(candles.high, candles.low, candles.close);
+    }
+
+    @Benchmark
+    public double[] calcATRSeries() {
+        return target.calcATRSeries(candles.high, candles.low, candles.close);
+    }
+
+    @Benchmark
+    public double calcEMA() {
+        return target.calcEMA(candles.close);
+    }
+
+    @Benchmark
+    public Object aggregateCandles_2h() {
+        return target.aggregateCandles(2);
+    }
+
+    @Benchmark
+    public Object aggregateCandles_4h() {
+        return target.aggregateCandles(4);
+    }
+
+    // extractCloses() became CandleSeries.closes(); the per-field JSON walk
+    // it used to do now happens once, in parseCandles.
+    @Benchmark
+    public double[] extractCloses() {
+        return target.extractCloses();
+    }
+
+    @Benchmark
+    public Object parseCandles() {
+        return target.parseCandles(json);
+    }
+
+    @Benchmark
+    public BigDecimal roundToTickBD() {
+        int i = roundIdx;
+        roundIdx = (i + 1) % PRICES.length;
+        return target.roundToTickBD(PRICES[i], TICKS[i]);
+    }
+
+    @Benchmark
+    public double roundToTick() {
+        int i = roundIdx;
+        roundIdx = (i + 1) % PRICES.length;
+        return target.roundToTick(PRICES[i], ticks[i]);
+    }
+
+    @Benchmark
+    public Object roundToTickJson() {
+        int i = roundIdx;
+        roundIdx = (i + 1) % PRICES.length;
+        return target.roundToTickJson(PRICES[i], ticks[i]);
+    }
+}
@@ -0,0 +1,493 @@
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// =============================================================================
+// Offline replay of the entry strategy over archived candles (CandleArchive).
+//
+// For every pair the 15m bars are walked in order. At each 15m close the
+// same gates as evaluatePair run on the bars that have CLOSED by then:
+//   4H -> 2H -> 1H trend agreement, 30M alignment, 15M alignment, pullback
+//   and rejection candle
+// using the live rule functions (tfResult, is15mAligned, pullbackDistances,
+// isRejection, computeSlTp, sanityClampSlTp). Indicators are IndicatorStates
+// advanced one bar at a time, with 2H/4H kept per alignment phase exactly
+// like the live aggKey states, so each step is O(1).
+//
+// The walk is split in two: tape() runs everything that depends only on the
+// indicator settings (up to 15M alignment), replay() applies pullback,
+// rejection, SL/TP and exits to the tape. ParameterSweep reuses one tape
+// for every variant that shares the indicator settings.
+//
+// Fills: a passing signal enters at the NEXT 15m bar's open. TP/SL are then
+// checked on every 15m bar from the entry bar on; a bar that touches both
+// counts as a stop (conservative), and a bar that opens beyond a level
+// exits at its open. One position per pair, COOLDOWN_MS from entry, and
+// MAX_OPEN_POSITIONS across all pairs (applied after the per-pair replay: a
+// signal dropped by the cap does not give its pair's later signals back).
+// Prices are not tick-rounded and fees are not modelled.
+//
+//   java -cp target/short-order-bot-1.0-SNAPSHOT-jar-with-dependencies.jar Backtester \
+//        [--download] [--days 365] [--pairs B-ETH_USDT,B-SOL_USDT] [--top 15]
+//
+// --download first fills the archive (candles.archiveDir) from the public
+// candlesticks endpoint, resuming after the newest archived bar per key.
+// =============================================================================
+final class Backtester {
+
+    private static final long M15  = 15 * 60_000L;
+    private static final long M30  = 30 * 60_000L;
+    private static final long HOUR = 60 * 60_000L;
+    private static final long DAY  = 24 * HOUR;
+
+    // Indicator seeding history loaded before the first tradable bar.
+    private static final long WARMUP_MS = 30 * DAY;
+
+    // 1h bars handed to computeSlTp as the 2H swing window.
+    private static final int SWING_WINDOW_1H = 200;
+
+    private static final int DOWNLOAD_CHUNK_BARS = 500;
+    private static final int DOWNLOAD_THREADS    = 4;
+
+    static final class Trade {
+        final String  pair;
+        final boolean isLong;
+        final long    signalTime, entryTime;
+        final double  entry, sl, tp;
+        long   exitTime;
+        double exit;
+        String reason;
+
+        Trade(String pair, boolean isLong, long signalTime, long entryTime, double entry, double sl, double tp) {
+            this.pair = pair;
+            this.isLong = isLong;
+            this.signalTime = signalTime;
+            this.entryTime = entryTime;
+            this.entry = entry;
+            this.sl = sl;
+            this.tp = tp;
+        }
+
+        double pnlPct() {
+            return (isLong ? exit - entry : entry - exit) / entry * 100.0;
+        }
+
+        double r() {
+            double risk = Math.abs(entry - sl);
+            return risk == 0 ? 0 : (isLong ? exit - entry : entry - exit) / risk;
+        }
+    }
+
+    private final CandleArchive archive;
+
+    Backtester(CandleArchive archive) {
+        this.archive = archive;
+    }
+
+    // =========================================================================
+    // Replay
+    // =========================================================================
+    List<Trade> run(List<String> pairs, long fromMs, long toMs) {
+        List<Trade> all = pairs.parallelStream()
+                .flatMap(p -> runPair(p, fromMs, toMs).stream())
+                .sorted(Comparator.comparingLong((Trade t) -> t.entryTime).thenComparing(t -> t.pair))
+                .collect(Collectors.toList());
+        return applyPositionCap(all, true);
+    }
+
+    List<Trade> runPair(String pair, long fromMs, long toMs) {
+        CandleSeries h1  = archive.read(pair, "60", fromMs - WARMUP_MS, toMs);
+        CandleSeries m30 = archive.read(pair, "30", fromMs - WARMUP_MS, toMs);
+        CandleSeries m15 = archive.read(pair, "15", fromMs - WARMUP_MS, toMs);
+        if (h1 == null || m30 == null || m15 == null) return List.of();
+        return simulate(pair, h1, m30, m15, fromMs, 0);
+    }
+
+    static List<Trade> simulate(String pair, CandleSeries h1, CandleSeries m30, CandleSeries m15,
+                                long fromMs, double tick) {
+        StrategyParams p = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.LIVE_PARAMS;
+        return replay(pair, tape(h1, m30, m15, p), h1, m15, fromMs, tick, p);
+    }
+
+    // The indicator-only part of the gates, recorded per 15m bar: every bar
+    // that passes 4H/2H/1H agreement, 30M and 15M alignment, with the values
+    // the later (pullback / SL-TP) rules read. It depends only on the
+    // EMA/Supertrend fields of the params, so ParameterSweep builds it once
+    // per indicatorKey() and replays it for every pullback/SL/RR variant.
+    static final class Tape {
+        int       size;
+        int[]     bar    = new int[64];    // 15m index
+        boolean[] up     = new boolean[64];
+        int[]     last1h = new int[64];    // newest closed 1h bar at that point
+        double[]  emaFast15 = new double[64], emaMid15 = new double[64],
+                  stLower15 = new double[64], stUpper15 = new double[64], atr15 = new double[64],
+                  stLower2h = new double[64], stUpper2h = new double[64], atr2h = new double[64];
+
+        private void add(int k, boolean trendUp, int h, IndicatorState st15, IndicatorState st2h) {
+            if (size == bar.length) grow();
+            bar[size]       = k;
+            up[size]        = trendUp;
+            last1h[size]    = h;
+            emaFast15[size] = st15.emaFast();
+            emaMid15[size]  = st15.emaMid();
+            stLower15[size] = st15.stLower();
+            stUpper15[size] = st15.stUpper();
+            atr15[size]     = st15.atr();
+            stLower2h[size] = st2h.stLower();
+            stUpper2h[size] = st2h.stUpper();
+            atr2h[size]     = st2h.atr();
+            size++;
+        }
+
+        private void grow() {
+            int n = bar.length * 2;
+            bar       = Arrays.copyOf(bar, n);
+            up        = Arrays.copyOf(up, n);
+            last1h    = Arrays.copyOf(last1h, n);
+            emaFast15 = Arrays.copyOf(emaFast15, n);
+            emaMid15  = Arrays.copyOf(emaMid15, n);
+            stLower15 = Arrays.copyOf(stLower15, n);
+            stUpper15 = Arrays.copyOf(stUpper15, n);
+            atr15     = Arrays.copyOf(atr15, n);
+            stLower2h = Arrays.copyOf(stLower2h, n);
+            stUpper2h = Arrays.copyOf(stUpper2h, n);
+            atr2h     = Arrays.copyOf(atr2h, n);
+        }
+    }
+
+    static Tape tape(CandleSeries h1, CandleSeries m30, CandleSeries m15, StrategyParams p) {
+        Tape tape = new Tape();
+        int minTf = p.minTfBars(), min15 = p.min15mBars();
+
+        IndicatorState st1h  = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.newIndicatorState(p);
+        IndicatorState st30  = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.newIndicatorState(p);
+        IndicatorState st15  = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.newIndicatorState(p);
+        IndicatorState[] st2h = phaseStates(2, p);
+        IndicatorState[] st4h = phaseStates(4, p);
+        int next1h = 0, next30 = 0;
+
+        for (int k = 0; k < m15.size(); k++) {
+            long barEnd = m15.time(k) + M15;
+
+            st15.update(m15.time(k), m15.high(k), m15.low(k), m15.close(k));
+            while (next1h < h1.size() && h1.time(next1h) + HOUR <= barEnd) {
+                st1h.update(h1.time(next1h), h1.high(next1h), h1.low(next1h), h1.close(next1h));
+                advanceAggregate(st2h, h1, next1h);
+                advanceAggregate(st4h, h1, next1h);
+                next1h++;
+            }
+            while (next30 < m30.size() && m30.time(next30) + M30 <= barEnd) {
+                st30.update(m30.time(next30), m30.high(next30), m30.low(next30), m30.close(next30));
+                next30++;
+            }
+            if (next1h == 0) continue;
+
+            // ---- 4H -> 2H -> 1H ----
+            int last1h = next1h - 1;
+            IndicatorState s4 = st4h[phase(h1.time(last1h), 4)];
+            IndicatorState s2 = st2h[phase(h1.time(last1h), 2)];
+            if (s4.count() < minTf || s2.count() < minTf || st1h.count() < minTf) continue;
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TFResult tf4h = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.tfResult(s4, null);
+            if (!tf4h.bullish && !tf4h.bearish) continue;
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TFResult tf2h = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.tfResult(s2, null);
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TFResult tf1h = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.tfResult(st1h, null);
+            boolean trendUp;
+            if (tf4h.bullish && tf2h.bullish && tf1h.bullish)      trendUp = true;
+            else if (tf4h.bearish && tf2h.bearish && tf1h.bearish) trendUp = false;
+            else continue;
+
+            // ---- 30M ----
+            if (st30.count() < minTf) continue;
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TFResult tf30 = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.tfResult(st30, null);
+            if (trendUp ? !tf30.bullish : !tf30.bearish) continue;
+
+            // ---- 15M alignment ----
+            if (st15.count() < min15) continue;
+            if (!CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.is15mAligned(trendUp, st15)) continue;
+
+            tape.add(k, trendUp, last1h, st15, s2);
+        }
+        return tape;
+    }
+
+    // Walks the 15m bars for exits and the tape's bars for entries; while
+    // flat it jumps straight to the next tape bar.
+    static List<Trade> replay(String pair, Tape tape, CandleSeries h1, CandleSeries m15,
+                              long fromMs, double tick, StrategyParams p) {
+        TickMath.Tick priceTick = TickMath.Tick.of(tick);
+        List<Trade> trades = new ArrayList<>();
+        long lastEntry = Long.MIN_VALUE / 2;
+        Trade open = null;
+        int c = 0;
+
+        for (int k = 0; k < m15.size(); k++) {
+            if (open == null) {
+                if (c >= tape.size) break;
+                k = Math.max(k, tape.bar[c]);
+            } else if (m15.time(k) >= open.entryTime && checkExit(open, m15, k)) {
+                trades.add(open);
+                open = null;
+            }
+            while (c < tape.size && tape.bar[c] < k) c++;
+            if (c >= tape.size || tape.bar[c] != k) continue;
+            int i = c++;
+
+            long barEnd = m15.time(k) + M15;
+            if (open != null || barEnd < fromMs || barEnd - lastEntry < CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.COOLDOWN_MS) continue;
+            if (k < 1 || k + 1 >= m15.size()) continue;
+
+            // ---- 15M: pullback, rejection on the bar that just closed ----
+            boolean trendUp = tape.up[i];
+            if (!CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.isPullback(
+                    CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.pullbackDistances(trendUp, m15.close(k),
+                            tape.emaFast15[i], tape.emaMid15[i], tape.stLower15[i], tape.stUpper15[i],
+                            tape.atr15[i], p.pullbackMaxAtr))) continue;
+            if (!CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.isRejection(trendUp, m15, k)) continue;
+
+            // ---- fill at the next bar's open, SL/TP as computed live ----
+            double entry = m15.open(k + 1);
+            int last1h = tape.last1h[i];
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TFResult tf2h = new CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TFResult();
+            tf2h.stBands = new double[]{tape.stLower2h[i], tape.stUpper2h[i]};
+            tf2h.atr     = tape.atr2h[i];
+            tf2h.candles = h1.sub(Math.max(0, last1h + 1 - SWING_WINDOW_1H), last1h + 1).aggregate(2);
+            double[] slTp = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.computeSlTp(trendUp, entry, tf2h, priceTick, p);
+            double[] clamped = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.sanityClampSlTp(trendUp, entry, slTp[0], slTp[1], priceTick);
+            open = new Trade(pair, trendUp, barEnd, m15.time(k + 1), entry, clamped[0], clamped[1]);
+            lastEntry = barEnd;
+        }
+
+        if (open != null) {
+            int last = m15.size() - 1;
+            open.exitTime = m15.time(last) + M15;
+            open.exit     = m15.close(last);
+            open.reason   = "open";
+            trades.add(open);
+        }
+        return trades;
+    }
+
+    private static IndicatorState[] phaseStates(int groupSize, StrategyParams p) {
+        IndicatorState[] s = new IndicatorState[groupSize];
+        for (int i = 0; i < groupSize; i++) s[i] = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.newIndicatorState(p);
+        return s;
+    }
+
+    private static int phase(long openTimeMs, int groupSize) {
+        return (int) Math.floorMod(openTimeMs / HOUR, (long) groupSize);
+    }
+
+    // 1h bar i just closed: the group of `groupSize` bars ending at i is the
+    // newest bar of the series anchored at i, i.e. of i's phase state.
+    private static void advanceAggregate(IndicatorState[] states, CandleSeries h1, int i) {
+        int g = states.length;
+        if (i < g - 1) return;
+        double hi = Double.NEGATIVE_INFINITY, lo = Double.POSITIVE_INFINITY;
+        for (int j = i - g + 1; j <= i; j++) {
+            hi = Math.max(hi, h1.high(j));
+            lo = Math.min(lo, h1.low(j));
+        }
+        states[phase(h1.time(i), g)].update(h1.time(i - g + 1), hi, lo, h1.close(i));
+    }
+
+    private static boolean checkExit(Trade t, CandleSeries m15, int k) {
+        double o = m15.open(k), h = m15.high(k), l = m15.low(k);
+        double exit;
+        String reason;
+        if (t.isLong) {
+            if      (o <= t.sl) { exit = o;    reason = "sl"; }
+            else if (l <= t.sl) { exit = t.sl; reason = "sl"; }
+            else if (o >= t.tp) { exit = o;    reason = "tp"; }
+            else if (h >= t.tp) { exit = t.tp; reason = "tp"; }
+            else return false;
+        } else {
+            if      (o >= t.sl) { exit = o;    reason = "sl"; }
+            else if (h >= t.sl) { exit = t.sl; reason = "sl"; }
+            else if (o <= t.tp) { exit = o;    reason = "tp"; }
+            else if (l <= t.tp) { exit = t.tp; reason = "tp"; }
+            else return false;
+        }
+        t.exit     = exit;
+        t.exitTime = m15.time(k) + M15;
+        t.reason   = reason;
+        return true;
+    }
+
+    static List<Trade> applyPositionCap(List<Trade> byEntry, boolean log) {
+        List<Trade> kept = new ArrayList<>(byEntry.size());
+        PriorityQueue<Long> openExits = new PriorityQueue<>();
+        for (Trade t : byEntry) {
+            while (!openExits.isEmpty() && openExits.peek() <= t.entryTime) openExits.poll();
+            if (openExits.size() >= CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.MAX_OPEN_POSITIONS) continue;
+            openExits.add(t.exitTime);
+            kept.add(t);
+        }
+        int dropped = byEntry.size() - kept.size();
+        if (log && dropped > 0) System.out.println("[BACKTEST] " + dropped + " signals skipped by MAX_OPEN_POSITIONS");
+        return kept;
+    }
+
+    // =========================================================================
+    // Report
+    // =========================================================================
+    // The scores of a trade list, shared by summary() and ParameterSweep so
+    // both report the same numbers. Profit factor is gross win / gross loss:
+    // +Inf with wins and no losses, 0 with neither.
+    static final class Metrics {
+        final int    trades, wins, tps, sls, open;
+        final double winRate, avgR, totalPct, profitFactor, maxDrawdownPct;
+
+        Metrics(List<Trade> trades) {
+            int wins = 0, tps = 0, sls = 0, open = 0;
+            double sumPct = 0, sumR = 0, grossWin = 0, grossLoss = 0;
+            for (Trade t : trades) {
+                double p = t.pnlPct();
+                sumPct += p;
+                sumR   += t.r();
+                if (p > 0) { wins++; grossWin += p; } else { grossLoss -= p; }
+                switch (t.reason) {
+                    case "tp": tps++; break;
+                    case "sl": sls++; break;
+                    default:   open++; break;
+                }
+            }
+            int n = trades.size();
+            this.trades         = n;
+            this.wins           = wins;
+            this.tps            = tps;
+            this.sls            = sls;
+            this.open           = open;
+            this.winRate        = n == 0 ? 0 : 100.0 * wins / n;
+            this.avgR           = n == 0 ? 0 : sumR / n;
+            this.totalPct       = sumPct;
+            this.profitFactor   = grossLoss == 0 ? (grossWin > 0 ? Double.POSITIVE_INFINITY : 0) : grossWin / grossLoss;
+            this.maxDrawdownPct = maxDrawdownPct(trades);
+        }
+    }
+
+    static String summary(List<Trade> trades) {
+        Metrics m = new Metrics(trades);
+        return String.format("trades=%d (tp=%d sl=%d open=%d) | win rate=%.1f%% | avg R=%.3f | total=%.2f%% | "
+                        + "profit factor=%.2f | max drawdown=%.2f%%",
+                m.trades, m.tps, m.sls, m.open, m.winRate, m.avgR, m.totalPct, m.profitFactor, m.maxDrawdownPct);
+    }
+
+    // Peak-to-trough of the cumulative per-trade % (unlevered, equal size),
+    // in exit order.
+    static double maxDrawdownPct(List<Trade> trades) {
+        List<Trade> byExit = new ArrayList<>(trades);
+        byExit.sort(Comparator.comparingLong(t -> t.exitTime));
+        double equity = 0, peak = 0, dd = 0;
+        for (Trade t : byExit) {
+            equity += t.pnlPct();
+            peak = Math.max(peak, equity);
+            dd = Math.max(dd, peak - equity);
+        }
+        return dd;
+    }
+
+    // =========================================================================
+    // History download into the archive
+    // =========================================================================
+    void download(List<String> pairs, long fromMs) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(DOWNLOAD_THREADS);
+        try {
+            List<Future<?>> jobs = new ArrayList<>();
+            for (String pair : pairs) {
+                jobs.add(pool.submit(() -> {
+                    downloadKey(pair, "60", 60, fromMs);
+                    downloadKey(pair, "30", 30, fromMs);
+                    downloadKey(pair, "15", 15, fromMs);
+                }));
+            }
+            for (Future<?> f : jobs) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    System.err.println("download: " + e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private void downloadKey(String pair, String resolution, int minsPerBar, long fromMs) {
+        long barSec = minsPerBar * 60L;
+        long nowSec = System.currentTimeMillis() / 1000L;
+        long last   = archive.lastTime(pair, resolution);
+        long from   = last == Long.MIN_VALUE ? fromMs / 1000L : last / 1000L;
+        int bars = 0;
+        while (from < nowSec) {
+            long to = Math.min(from + barSec * DOWNLOAD_CHUNK_BARS, nowSec);
+            CandleSeries chunk = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.fetchCandles(pair, resolution, from, to);
+            if (chunk == null) {
+                System.err.println("  download " + pair + "/" + resolution + " stopped at " + from);
+                break;
+            }
+            archive.append(pair, resolution, barSec, chunk, System.currentTimeMillis());
+            bars += chunk.size();
+            from = to;
+        }
+        System.out.println("  " + pair + "/" + resolution + ": " + bars + " bars downloaded");
+    }
+
+    // =========================================================================
+    // CLI
+    // =========================================================================
+    public static void main(String[] args) throws Exception {
+        int days = 365, top = 15;
+        boolean download = false;
+        List<String> pairs = Arrays.asList(CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.COINS_TO_TRADE);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--download": download = true; break;
+                case "--days":     days = Integer.parseInt(args[++i]); break;
+                case "--top":      top  = Integer.parseInt(args[++i]); break;
+                case "--pairs":    pairs = Arrays.asList(args[++i].split(",")); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        CandleArchive archive = new CandleArchive(Paths.get(CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.setting(
+                "candles.archiveDir", "CANDLE_ARCHIVE_DIR", "candle_archive")));
+        Backtester bt = new Backtester(archive);
+        long toMs   = System.currentTimeMillis();
+        long fromMs = toMs - days * DAY;
+
+        if (download) {
+            System.out.println("=== Downloading " + days + "d (+warm-up) for " + pairs.size() + " pairs ===");
+            bt.download(pairs, fromMs - WARMUP_MS);
+        }
+
+        long t0 = System.nanoTime();
+        List<Trade> trades = bt.run(pairs, fromMs, toMs);
+        double secs = (System.nanoTime() - t0) / 1e9;
+
+        System.out.printf("%n=== Backtest: %d pairs, %d days, %.2fs ===%n", pairs.size(), days, secs);
+        System.out.println("[BACKTEST] " + summary(trades));
+        System.out.println("[ARCHIVE] " + archive.stats());
+
+        List<String> byPair = trades.stream()
+                .collect(Collectors.groupingBy(t -> t.pair))
+                .entrySet().stream()
+                .sorted(Comparator.comparingDouble(e -> -e.getValue().stream().mapToDouble(Trade::pnlPct).sum()))
+                .limit(top)
+                .map(e -> String.format("  %-22s %s", e.getKey(), summary(e.getValue())))
+                .collect(Collectors.toList());
+        if (!byPair.isEmpty()) {
+            System.out.println("Top pairs by total %:");
+            byPair.forEach(System.out::println);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// On-disk candle archive: one append-only binary file per (pair, resolution)
+// holding CLOSED bars only, in open-time order.
+//
+//   header (16 bytes):  int magic 'CNDL' | int version | int barSec | int 0
+//   record (48 bytes):  long openTimeMs | double open, high, low, close, volume
+//
+// Reads map the file (FileChannel.map, READ_ONLY) and binary-search the
+// fixed-width records for the requested start time, so loading a 700-bar
+// window is a single bulk copy from the page cache. Appends go through a
+// plain FileChannel write at the end of the file.
+//
+// A record torn by a crash mid-append is ignored on read (only whole records
+// are counted) and cut off by the next append. A header with the wrong
+// magic, version or barSec (the resolution in minutes * 60) makes the file
+// unreadable, and the next append starts it over. Any I/O problem is logged and
+// treated as "not archived" — the archive is an optimisation, never a
+// reason to fail a candle request.
+// =============================================================================
+final class CandleArchive {
+
+    private static final int MAGIC       = 0x434E444C; // "CNDL"
+    private static final int VERSION     = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 48;
+
+    private final Path dir;
+    // Open time of the newest archived bar per key (Long.MIN_VALUE = empty),
+    // so append() doesn't have to re-read the file every scan.
+    private final Map<String, Long> lastTimes = new ConcurrentHashMap<>();
+
+    private final AtomicLong barsRead    = new AtomicLong();
+    private final AtomicLong barsWritten = new AtomicLong();
+
+    CandleArchive(Path dir) {
+        this.dir = dir;
+    }
+
+    // Archived bars with openTime >= fromMs, or null if there are none (or
+    // the file is unusable).
+    CandleSeries read(String pair, String resolution, long fromMs) {
+        return read(pair, resolution, fromMs, Long.MAX_VALUE);
+    }
+
+    // Archived bars with fromMs <= openTime <= toMs, or null if there are none.
+    CandleSeries read(String pair, String resolution, long fromMs, long toMs) {
+        Path file = file(pair, resolution);
+        if (!Files.exists(file)) return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            int count = recordCount(ch);
+            if (count <= 0) return null;
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + (long) count * RECORD_SIZE);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (!validHeader(map.getInt(0), map.getInt(4), map.getInt(8), barSecOf(resolution))) {
+                System.err.println("CandleArchive: bad header in " + file + " — ignoring");
+                lastTimes.remove(key(pair, resolution)); // so the next append starts the file over
+                return null;
+            }
+            lastTimes.putIfAbsent(key(pair, resolution), timeAt(map, count - 1));
+
+            int first = lowerBound(map, count, fromMs);
+            int last  = lowerBound(map, count, toMs == Long.MAX_VALUE ? toMs : toMs + 1);
+            int n = last - first;
+            if (n <= 0) return null;
+
+            long[]   t = new long[n];
+            double[] o = new double[n], h = new double[n], l = new double[n],
+                     c = new double[n], v = new double[n];
+            for (int i = 0; i < n; i++) {
+                int at = HEADER_SIZE + (first + i) * RECORD_SIZE;
+                t[i] = map.getLong(at);
+                o[i] = map.getDouble(at + 8);
+                h[i] = map.getDouble(at + 16);
+                l[i] = map.getDouble(at + 24);
+                c[i] = map.getDouble(at + 32);
+                v[i] = map.getDouble(at + 40);
+            }
+            barsRead.addAndGet(n);
+            return new CandleSeries(t, o, h, l, c, v, 0, n);
+        } catch (IOException e) {
+            System.err.println("CandleArchive.read(" + pair + "/" + resolution + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Open time of the newest archived bar, Long.MIN_VALUE if none.
+    long lastTime(String pair, String resolution) {
+        try {
+            return lastTimeOnDisk(file(pair, resolution), barSecOf(resolution));
+        } catch (IOException e) {
+            System.err.println("CandleArchive.lastTime(" + pair + "/" + resolution + "): " + e.getMessage());
+            return Long.MIN_VALUE;
+        }
+    }
+
+    // Appends the bars of `bars` that are newer than the newest archived bar
+    // and have closed by nowMs (openTime + bar length <= nowMs).
+    void append(String pair, String resolution, long barSec, CandleSeries bars, long nowMs) {
+        if (bars == null || bars.size() == 0) return;
+        String key = key(pair, resolution);
+        Path file = file(pair, resolution);
+        long barMs = barSec * 1000L;
+        try {
+            // Cheap pre-check against the cached (or on-disk) last time; the
+            // file itself decides once it is open.
+            Long known = lastTimes.get(key);
+            long lastArchived = known != null ? known : lastTimeOnDisk(file, (int) barSec);
+            int to = closedEnd(bars, barMs, nowMs);
+            if (to <= firstAfter(bars, lastArchived)) {
+                lastTimes.put(key, lastArchived);
+                return;
+            }
+
+            Files.createDirectories(dir);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                int count = recordCount(ch);
+                if (count < 0 || !validHeader(ch, (int) barSec)) {
+                    // Starting over: nothing is archived, so every closed bar
+                    // we have goes in — not just those after a stale cached time.
+                    lastTimes.remove(key);
+                    ch.truncate(0);
+                    ByteBuffer hdr = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                    hdr.putInt(MAGIC).putInt(VERSION).putInt((int) barSec).putInt(0).flip();
+                    ch.write(hdr, 0);
+                    count = 0;
+                }
+                long end = HEADER_SIZE + (long) count * RECORD_SIZE;
+                ch.truncate(end); // drop a torn trailing record, if any
+
+                lastArchived = count == 0 ? Long.MIN_VALUE : lastTimeOf(ch, count);
+                int from = firstAfter(bars, lastArchived);
+                if (to <= from) {
+                    lastTimes.put(key, lastArchived);
+                    return;
+                }
+
+                ByteBuffer buf = ByteBuffer.allocate((to - from) * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = from; i < to; i++) {
+                    buf.putLong(bars.time(i))
+                       .putDouble(bars.open(i)).putDouble(bars.high(i)).putDouble(bars.low(i))
+                       .putDouble(bars.close(i)).putDouble(bars.volume(i));
+                }
+                buf.flip();
+                while (buf.hasRemaining()) end += ch.write(buf, end);
+                barsWritten.addAndGet(to - from);
+                lastTimes.put(key, bars.time(to - 1));
+            }
+        } catch (IOException e) {
+            System.err.println("CandleArchive.append(" + pair + "/" + resolution + "): " + e.getMessage());
+        }
+    }
+
+    String stats() {
+        return String.format("dir=%s | bars read=%d | bars appended=%d", dir, barsRead.get(), barsWritten.get());
+    }
+
+    // -------------------------------------------------------------------------
+
+    private Path file(String pair, String resolution) {
+        return dir.resolve(pair + "_" + resolution + ".bin");
+    }
+
+    private static String key(String pair, String resolution) {
+        return pair + "|" + resolution;
+    }
+
+    // Whole records in the file; -1 if the file has no (complete) header.
+    private static int recordCount(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size < HEADER_SIZE) return -1;
+        return (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+    }
+
+    private static boolean validHeader(FileChannel ch, int barSec) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        ch.read(b, 0);
+        return validHeader(b.getInt(0), b.getInt(4), b.getInt(8), barSec);
+    }
+
+    // barSec <= 0: unknown resolution, not checked.
+    private static boolean validHeader(int magic, int version, int fileBarSec, int barSec) {
+        return magic == MAGIC && version == VERSION && (barSec <= 0 || fileBarSec == barSec);
+    }
+
+    // Resolutions are minutes ("15", "60", ...); -1 for anything else.
+    private static int barSecOf(String resolution) {
+        try {
+            return Integer.parseInt(resolution) * 60;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private long lastTimeOnDisk(Path file, int barSec) throws IOException {
+        if (!Files.exists(file)) return Long.MIN_VALUE;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            int count = recordCount(ch);
+            if (count <= 0 || !validHeader(ch, barSec)) return Long.MIN_VALUE;
+            return lastTimeOf(ch, count);
+        }
+    }
+
+    private static long lastTimeOf(FileChannel ch, int count) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        ch.read(b, HEADER_SIZE + (long) (count - 1) * RECORD_SIZE);
+        return b.getLong(0);
+    }
+
+    // Index of the first bar opened after lastArchived.
+    private static int firstAfter(CandleSeries bars, long lastArchived) {
+        int from = bars.size();
+        while (from > 0 && bars.time(from - 1) > lastArchived) from--;
+        return from;
+    }
+
+    // End (exclusive) of the bars that have closed by nowMs.
+    private static int closedEnd(CandleSeries bars, long barMs, long nowMs) {
+        int to = bars.size();
+        while (to > 0 && bars.time(to - 1) + barMs > nowMs) to--;
+        return to;
+    }
+
+    private static long timeAt(MappedByteBuffer map, int i) {
+        return map.getLong(HEADER_SIZE + i * RECORD_SIZE);
+    }
+
+    // First record index whose open time is >= timeMs (count if none).
+    private static int lowerBound(MappedByteBuffer map, int count, long timeMs) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timeAt(map, mid) < timeMs) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,207 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// In-memory candle store, one entry per (pair, resolution).
+//
+// The first request for a key does the same full window fetch the bot always
+// did (e.g. 700 x 1h). After that only the tail is requested: `from` = open
+// time of the LAST stored bar (minus one bar of overlap), so the response is
+// just a couple of bars: the previously-last one (which may have been the
+// live/forming bar last time, so it gets replaced) plus any bars that opened
+// since. Everything older is served from memory.
+//
+// get() returns exactly the same window the direct fetch would have — every
+// bar whose open time is >= now - count * barLength — so callers (and
+// dropLastIfForming) see no difference apart from latency.
+//
+// Bars are kept in growable primitive columns and get() returns a zero-copy
+// CandleSeries view over them (see CandleSeries for the validity rule).
+// Trimming old bars never shifts data in place — it moves the start index,
+// and compaction copies into fresh arrays — so an older view is never
+// rewritten underneath its reader, apart from the overlap bars that the next
+// tail fetch replaces.
+//
+// A failed fetch returns null, as before, rather than silently serving a
+// stale window.
+//
+// With a CandleArchive attached, a key's first request is seeded from disk
+// when the archive holds a gap-free run of closed bars reaching back to the
+// window start — only the tail since the newest archived bar is downloaded,
+// so a restarted bot warms up without re-pulling 700 bars per pair. Every
+// fetch appends its newly closed bars to the archive.
+// =============================================================================
+final class CandleCache {
+
+    interface Fetcher {
+        CandleSeries fetch(String pair, String resolution, long fromSec, long toSec);
+    }
+
+    private static final class Entry {
+        long[]   time   = new long[0];
+        double[] open   = new double[0], high = new double[0], low = new double[0],
+                 close  = new double[0], volume = new double[0];
+        int start, end;                       // live bars are [start, end)
+        long coveredFromSec = Long.MAX_VALUE; // oldest `from` we've fully fetched
+        int  maxCount;                        // largest window ever requested
+
+        int  size()     { return end - start; }
+        long lastTime() { return time[end - 1]; }
+
+        void reset() {
+            start = end = 0;
+            coveredFromSec = Long.MAX_VALUE;
+        }
+
+        void ensureCapacity(int extra) {
+            if (end + extra <= time.length) return;
+            int live = end - start;
+            int cap  = Math.max(16, (live + extra) * 3 / 2);
+            long[]   t = new long[cap];
+            double[] o = new double[cap], h = new double[cap], l = new double[cap],
+                     c = new double[cap], v = new double[cap];
+            System.arraycopy(time,   start, t, 0, live);
+            System.arraycopy(open,   start, o, 0, live);
+            System.arraycopy(high,   start, h, 0, live);
+            System.arraycopy(low,    start, l, 0, live);
+            System.arraycopy(close,  start, c, 0, live);
+            System.arraycopy(volume, start, v, 0, live);
+            time = t; open = o; high = h; low = l; close = c; volume = v;
+            start = 0;
+            end   = live;
+        }
+
+        // Appends bars strictly newer than the current last bar. Returns
+        // false if the batch has bars without a usable open time.
+        boolean appendAll(CandleSeries s) {
+            ensureCapacity(s.size());
+            long prev = end > start ? time[end - 1] : Long.MIN_VALUE;
+            for (int i = 0; i < s.size(); i++) {
+                long t = s.time(i);
+                if (t <= 0) return false;
+                if (t <= prev) continue; // duplicate / out-of-order bar from the API
+                time[end]   = t;
+                open[end]   = s.open(i);
+                high[end]   = s.high(i);
+                low[end]    = s.low(i);
+                close[end]  = s.close(i);
+                volume[end] = s.volume(i);
+                end++;
+                prev = t;
+            }
+            return true;
+        }
+    }
+
+    private final Fetcher fetcher;
+    private final CandleArchive archive; // may be null
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong fullFetches        = new AtomicLong();
+    private final AtomicLong incrementalFetches = new AtomicLong();
+    private final AtomicLong barsDownloaded     = new AtomicLong();
+    private final AtomicLong barsServed         = new AtomicLong();
+    private final AtomicLong archiveSeeds       = new AtomicLong();
+
+    CandleCache(Fetcher fetcher) {
+        this(fetcher, null);
+    }
+
+    CandleCache(Fetcher fetcher, CandleArchive archive) {
+        this.fetcher = fetcher;
+        this.archive = archive;
+    }
+
+    CandleSeries get(String pair, String resolution, int count, long minsPerBar) {
+        long barSec = minsPerBar * 60L;
+        long now    = System.currentTimeMillis() / 1000L;
+        long from   = now - barSec * count;
+
+        Entry e = entries.computeIfAbsent(pair + "|" + resolution, k -> new Entry());
+        synchronized (e) {
+            e.maxCount = Math.max(e.maxCount, count);
+            boolean covered = e.size() > 0 && e.coveredFromSec <= from;
+            if (!covered && e.size() == 0) covered = seedFromArchive(e, pair, resolution, from, barSec);
+
+            if (!covered) {
+                CandleSeries fresh = fetcher.fetch(pair, resolution, from, now);
+                if (fresh == null) return null;
+                fullFetches.incrementAndGet();
+                barsDownloaded.addAndGet(fresh.size());
+                e.reset();
+                if (!e.appendAll(fresh)) {
+                    // Bars without a usable "time" field can't be merged
+                    // incrementally — hand the raw response back uncached.
+                    e.reset();
+                    return fresh;
+                }
+                e.coveredFromSec = from;
+            } else {
+                // Start one bar before the last stored one so the (possibly
+                // forming) last bar is always re-fetched, whether or not the
+                // endpoint treats `from` as inclusive.
+                long lastOpenSec = e.lastTime() / 1000L;
+                CandleSeries tail = fetcher.fetch(pair, resolution, lastOpenSec - barSec, now);
+                if (tail == null) return null;
+                incrementalFetches.incrementAndGet();
+                barsDownloaded.addAndGet(tail.size());
+                if (tail.size() > 0) {
+                    long firstNew = tail.time(0);
+                    while (e.size() > 0 && e.lastTime() >= firstNew) e.end--;
+                    if (!e.appendAll(tail)) {
+                        e.reset();
+                        return null;
+                    }
+                }
+                trim(e, now - barSec * e.maxCount);
+            }
+            if (archive != null) {
+                archive.append(pair, resolution, barSec,
+                        new CandleSeries(e.time, e.open, e.high, e.low, e.close, e.volume, e.start, e.size()),
+                        now * 1000L);
+            }
+
+            long fromMs = from * 1000L;
+            int first = e.end;
+            while (first > e.start && e.time[first - 1] >= fromMs) first--;
+            barsServed.addAndGet(e.end - first);
+            return new CandleSeries(e.time, e.open, e.high, e.low, e.close, e.volume, first, e.end - first);
+        }
+    }
+
+    String stats() {
+        long down = barsDownloaded.get(), served = barsServed.get();
+        return String.format("keys=%d | full fetches=%d | incremental=%d | archive seeds=%d | bars downloaded=%d | bars served=%d (%.1fx)",
+                entries.size(), fullFetches.get(), incrementalFetches.get(), archiveSeeds.get(), down, served,
+                down == 0 ? 0.0 : (double) served / down);
+    }
+
+    private boolean seedFromArchive(Entry e, String pair, String resolution, long fromSec, long barSec) {
+        if (archive == null) return false;
+        CandleSeries a = archive.read(pair, resolution, fromSec * 1000L);
+        if (a == null) return false;
+        long barMs = barSec * 1000L;
+        // Must reach back to the window start and have no holes (the bot may
+        // have been down for a while at some point).
+        if (a.time(0) >= (fromSec + barSec) * 1000L) return false;
+        if ((a.lastTime() - a.time(0)) / barMs + 1 != a.size()) return false;
+        if (!e.appendAll(a)) {
+            e.reset();
+            return false;
+        }
+        e.coveredFromSec = fromSec;
+        archiveSeeds.incrementAndGet();
+        return true;
+    }
+
+    private static void trim(Entry e, long keepFromSec) {
+        long keepFromMs = keepFromSec * 1000L;
+        int drop = 0;
+        while (e.start + drop < e.end && e.time[e.start + drop] < keepFromMs) drop++;
+        if (drop > 0) {
+            e.start += drop;
+            e.coveredFromSec = Math.max(e.coveredFromSec, keepFromSec);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.Arrays;
+
+// =============================================================================
+// Columnar OHLCV candle series: parallel primitive columns (open time in ms +
+// open/high/low/close/volume), built ONCE when a response is parsed, instead
+// of a JSONArray of JSONObjects that every consumer re-walks with a hash
+// lookup per field. (ExchangeJson.parseCandles fills the columns directly
+// from the response stream.)
+//
+// A series is a window [from, from + size) over its backing columns, so
+// dropLast() and lastN() are zero-copy views and index 0 is always the
+// oldest bar in the window. aggregate() (2H/4H) is a single primitive loop
+// into fresh columns.
+//
+// Series handed out by CandleCache share the cache's backing columns and are
+// only valid until the next fetch of the same (pair, resolution) — hold on to
+// copy() if you need one for longer.
+// =============================================================================
+final class CandleSeries {
+
+    private final long[]   time;
+    private final double[] open, high, low, close, volume;
+    private final int from, size;
+
+    CandleSeries(long[] time, double[] open, double[] high, double[] low, double[] close,
+                 double[] volume, int from, int size) {
+        this.time   = time;
+        this.open   = open;
+        this.high   = high;
+        this.low    = low;
+        this.close  = close;
+        this.volume = volume;
+        this.from   = from;
+        this.size   = size;
+    }
+
+    int size() { return size; }
+
+    long   time(int i)   { return time[from + i]; }
+    double open(int i)   { return open[from + i]; }
+    double high(int i)   { return high[from + i]; }
+    double low(int i)    { return low[from + i]; }
+    double close(int i)  { return close[from + i]; }
+    double volume(int i) { return volume[from + i]; }
+
+    long   lastTime()  { return time[from + size - 1]; }
+    double lastClose() { return close[from + size - 1]; }
+
+    // Same contract as the old dropLastIfForming(JSONArray): fewer than two
+    // bars are returned untouched.
+    CandleSeries dropLast() {
+        if (size < 2) return this;
+        return new CandleSeries(time, open, high, low, close, volume, from, size - 1);
+    }
+
+    CandleSeries lastN(int n) {
+        if (size <= n) return this;
+        return new CandleSeries(time, open, high, low, close, volume, from + size - n, n);
+    }
+
+    // Zero-copy view of bars [start, end) of this window.
+    CandleSeries sub(int start, int end) {
+        return new CandleSeries(time, open, high, low, close, volume, from + start, end - start);
+    }
+
+    // Groups of `groupSize` consecutive bars, anchored at the END of the
+    // series (leading bars that don't fill a group are dropped). A merged
+    // bar's open time is the open time of its first source bar.
+    CandleSeries aggregate(int groupSize) {
+        if (size < groupSize) return null;
+        int groups = size / groupSize;
+        int start  = from + size - groups * groupSize;
+        long[]   t = new long[groups];
+        double[] o = new double[groups], h = new double[groups], l = new double[groups],
+                 c = new double[groups], v = new double[groups];
+        for (int g = 0, i = start; g < groups; g++, i += groupSize) {
+            double hi = Double.NEGATIVE_INFINITY, lo = Double.POSITIVE_INFINITY, vol = 0;
+            for (int j = i; j < i + groupSize; j++) {
+                hi = Math.max(hi, high[j]);
+                lo = Math.min(lo, low[j]);
+                vol += volume[j];
+            }
+            t[g] = time[i];
+            o[g] = open[i];
+            c[g] = close[i + groupSize - 1];
+            h[g] = hi;
+            l[g] = lo;
+            v[g] = vol;
+        }
+        return new CandleSeries(t, o, h, l, c, v, 0, groups);
+    }
+
+    // Index (within this window) of the bar that opened at timeMs, searching
+    // from the newest bar backwards; -1 if it isn't in the window.
+    int indexOfTime(long timeMs) {
+        for (int i = size - 1; i >= 0; i--) {
+            long t = time[from + i];
+            if (t == timeMs) return i;
+            if (t < timeMs) break;
+        }
+        return -1;
+    }
+
+    double[] opens()  { return Arrays.copyOfRange(open,  from, from + size); }
+    double[] highs()  { return Arrays.copyOfRange(high,  from, from + size); }
+    double[] lows()   { return Arrays.copyOfRange(low,   from, from + size); }
+    double[] closes() { return Arrays.copyOfRange(close, from, from + size); }
+
+    CandleSeries copy() {
+        return new CandleSeries(Arrays.copyOfRange(time, from, from + size), opens(), highs(), lows(), closes(),
+                Arrays.copyOfRange(volume, from, from + size), 0, size);
+    }
+}
@@ -1,13 +1,9 @@
 import org.json.JSONArray; // iss code m mera trainling sl ka logic commented hai
 import org.json.JSONObject;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -15,7 +11,13 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -24,10 +26,14 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     // =========================================================================
     // API Configuration
     // =========================================================================
-    private static final String API_KEY    = System.getenv("DELTA_API_KEY");
-    private static final String API_SECRET = System.getenv("DELTA_API_SECRET");
-    private static final String BASE_URL       = "https://api.coindcx.com";
-    private static final String PUBLIC_API_URL = "https://public.coindcx.com";
+    // Each setting: JVM system property first, then environment variable,
+    // then the default. Pointing the two URLs at a local stand-in (see
+    // bench.MockExchange) runs the whole bot offline.
+    private static final String API_KEY    = setting("delta.apiKey",    "DELTA_API_KEY",    null);
+    private static final String API_SECRET = setting("delta.apiSecret", "DELTA_API_SECRET", null);
+    private static final String BASE_URL       = setting("coindcx.baseUrl",   "COINDCX_BASE_URL",   "https://api.coindcx.com");
+    private static final String PUBLIC_API_URL = setting("coindcx.publicUrl", "COINDCX_PUBLIC_URL", "https://public.coindcx.com");
+    private static final String STREAM_URL     = setting("coindcx.streamUrl", "COINDCX_STREAM_URL", "wss://stream.coindcx.com");
 
     private static final double MAX_MARGIN = 4000.0;
     private static final int    LEVERAGE   = 15;
@@ -39,13 +45,24 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     private static final long TPSL_RETRY_DELAY_MS = 2000L;
 
     private static final long TICK_CACHE_TTL_MS = 3_600_000L;
-    private static final long COOLDOWN_MS       = 2 * 60 * 60 * 1000L;
+    static final long COOLDOWN_MS       = 2 * 60 * 60 * 1000L;
 
-    private static final int MAX_OPEN_POSITIONS = 120;
+    static final int MAX_OPEN_POSITIONS = 120;
 
     private static final int  POSITION_ID_MAX_RETRIES = 5;
     private static final long POSITION_ID_RETRY_DELAY_MS = 1500L;
 
+    // Must stay below ENTRY_CHECK_DELAY_MS so confirmation polls always read
+    // a fresh positions list.
+    private static final long POSITIONS_SNAPSHOT_TTL_MS = 750L;
+
+    // /futures/positions is paged and returns no total count. Page 1 is
+    // fetched alone; while pages keep coming back full, the next
+    // POSITIONS_PAGE_WAVE pages are requested concurrently.
+    private static final int POSITIONS_PAGE_SIZE = 100;
+    private static final int POSITIONS_PAGE_WAVE = 4;
+    private static final int POSITIONS_MAX_PAGES = 50;
+
     private static final int EMA_FAST = 9;
     private static final int EMA_MID  = 21;
     private static final int ATR_PERIOD = 14;
@@ -66,6 +83,11 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     // set this to 1.0. It was 1.2 originally (TP gap 20% wider than SL gap).
     private static final double RR_TARGET = 0.6;
 
+    // The values above as one StrategyParams (what Backtester/ParameterSweep
+    // vary). The live bot always runs on this.
+    static final StrategyParams LIVE_PARAMS = new StrategyParams(EMA_FAST, EMA_MID, ST_PERIOD, ST_MULTIPLIER,
+            PULLBACK_MAX_ATR, SL_ATR_BUFFER, SWING_LOOKBACK, RR_TARGET);
+
     private static final double LIMIT_ORDER_BUFFER_PCT = 0.001;
 
     private static final int CANDLE_15M = 60;
@@ -73,6 +95,12 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     private static final int CANDLE_1H  = 100;
     private static final int HTF_1H_FETCH_COUNT = 700;
 
+    // Entry-scan fan-out. Per-pair candle fetch + gate evaluation runs on this
+    // many worker threads (the work is almost entirely blocking HTTP, so this
+    // is sized for I/O, not CPU). 1 = old fully-sequential behaviour.
+    private static final int  SCAN_PARALLELISM     = 16;
+    private static final long SCAN_PAIR_TIMEOUT_MS = 60_000L;
+
     // =========================================================================
     // Trailing SL/TP configuration
     // =========================================================================
@@ -82,22 +110,73 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     // many open positions. 5-10s is a reasonable floor for REST polling.
     private static final long TRAIL_POLL_INTERVAL_MS = 8_000L;
 
+    // Trailing stays OFF unless explicitly enabled (-Dtrail.enabled=true or
+    // TRAIL_ENABLED=true): with it off, SL/TP stay where the entry put them.
+    private static final boolean TRAIL_ENABLED =
+            Boolean.parseBoolean(setting("trail.enabled", "TRAIL_ENABLED", "false"));
+
     // How often (ms) we re-run the full multi-timeframe entry scan across
     // all ~250 pairs. This does NOT need to be as frequent as trailing —
     // trend/structure changes are not a 15-second phenomenon.
     private static final long ENTRY_SCAN_INTERVAL_MS = 3 * 60 * 1000L;
 
+    // Live trade stream for last prices (MarketStream). Off -> every
+    // getLastPrice is a REST call, as before. A stream with no frame for
+    // STREAM_STALE_MS counts as down and reads go back to REST.
+    private static final boolean STREAM_ENABLED =
+            Boolean.parseBoolean(setting("stream.enabled", "STREAM_ENABLED", "true"));
+    private static final long STREAM_STALE_MS = 15_000L;
+
+    // How often (ms) the protection worker re-checks the positions snapshot
+    // for positions with no TP/SL (on top of what the order flow hands it).
+    private static final long PROTECTION_CHECK_MS = 5_000L;
+
     // Where trailing state is persisted so it survives VM reboots / JVM
     // restarts. Mirrors the existing bot_state.json / last_trade_state.json
     // pattern already used elsewhere in this project.
-    private static final String TRAIL_STATE_FILE = "trail_state.json";
+    private static final String TRAIL_STATE_FILE = setting("trail.stateFile", "TRAIL_STATE_FILE", "trail_state.json");
+
+    // Instrument metadata snapshot, so a restart doesn't wait on the
+    // exchange before it can round prices (see InstrumentCache).
+    private static final String INSTRUMENT_CACHE_FILE =
+            setting("instruments.cacheFile", "INSTRUMENT_CACHE_FILE", "instrument_cache.json");
+
+    // Every order placed, append-only; also where the per-pair cooldown is
+    // read from, so it survives restarts (see TradeLedger).
+    private static final String TRADE_LEDGER_FILE = setting("ledger.file", "TRADE_LEDGER_FILE", "trade_ledger.jsonl");
+    private static final TradeLedger tradeLedger = new TradeLedger(Paths.get(TRADE_LEDGER_FILE));
+
+    // pair -> trailing state: in memory, journaled to TRAIL_STATE_FILE +
+    // ".journal" on every change and compacted into TRAIL_STATE_FILE
+    // (see TrailJournal).
+    private static final TrailJournal trailStates = new TrailJournal(Paths.get(TRAIL_STATE_FILE));
+
+    // Price-triggered trailing (only started when TRAIL_ENABLED).
+    private static final TrailEngine trailEngine = new TrailEngine(new TrailEngine.Exchange() {
+        @Override public List<Position> positions() throws Exception { return positionBook.snapshot().all; }
+        @Override public Position position(String pair) throws Exception { return findPosition(pair); }
+        @Override public double lastPrice(String pair) { return getLastPrice(pair); }
+        @Override public TickMath.Tick tick(String pair) { return instrumentTick(instrumentId(pair)); }
+        @Override public void setTpSl(String posId, double tp, double sl, String pair) {
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.setTpSl(posId, tp, sl, pair);
+        }
+    }, trailStates);
 
-    private static final Map<String, JSONObject> instrumentCache = new ConcurrentHashMap<>();
-    private static long lastCacheUpdate = 0;
-    private static final Map<String, Long> lastTradeTime = new ConcurrentHashMap<>();
+    // Fill -> position id -> TP/SL for each placed order, off the scan thread.
+    static final OrderPipeline orderPipeline = new OrderPipeline(new OrderPipeline.Exchange() {
+        @Override public Position position(String pair) throws Exception { return findPosition(pair); }
+        @Override public void setTpSl(String posId, double tp, double sl, String pair) {
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.setTpSl(posId, tp, sl, pair);
+        }
+    }, MAX_ENTRY_PRICE_CHECKS, ENTRY_CHECK_DELAY_MS,
+       POSITION_ID_MAX_RETRIES, POSITION_ID_RETRY_DELAY_MS,
+       TPSL_MAX_RETRIES, TPSL_RETRY_DELAY_MS);
 
-    // pair -> trailing state (in-memory, backed by TRAIL_STATE_FILE on disk)
-    private static final Map<String, TrailState> trailStateMap = new ConcurrentHashMap<>();
+    // Fallback TP/SL for unprotected positions, on its own threads and ahead
+    // of the scan's requests (replaces the blocking end-of-scan sweep).
+    private static final ProtectionWorker protectionWorker = new ProtectionWorker(
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE::protectPosition,
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE::unprotectedPositions);
 
     private static final String[] COIN_SYMBOLS = {
         "ETH", "SOL", "ZEC", "XRP", "DOGE", "BNB", "TAO", "1000PEPE", "ADA", "SUI",
@@ -134,11 +213,60 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
             .flatMap(s -> Stream.of("B-" + s + "_USDT", s + "_USDT"))
             .collect(Collectors.toCollection(HashSet::new));
 
-    private static final String[] COINS_TO_TRADE = Stream.of(COIN_SYMBOLS)
+    static final String[] COINS_TO_TRADE = Stream.of(COIN_SYMBOLS)
             .map(s -> "B-" + s + "_USDT")
             .toArray(String[]::new);
 
-    private static class TFResult {
+    private static final HmacSigner signer = new HmacSigner(API_SECRET);
+
+    private static final InstrumentCache instruments = new InstrumentCache(new InstrumentCache.Source() {
+        @Override public List<String> activePairs() throws IOException {
+            JSONArray a = new JSONArray(publicGet(BASE_URL + "/exchange/v1/derivatives/futures/data/active_instruments"));
+            List<String> out = new ArrayList<>(a.length());
+            for (int i = 0; i < a.length(); i++) out.add(a.getString(i));
+            return out;
+        }
+        @Override public JSONObject instrument(String pair) throws IOException {
+            String raw = publicGet(BASE_URL + "/exchange/v1/derivatives/futures/data/instrument?pair=" + pair);
+            return new JSONObject(raw).getJSONObject("instrument");
+        }
+    }, COINS_TO_TRADE, INTEGER_QTY_PAIRS, Paths.get(INSTRUMENT_CACHE_FILE), TICK_CACHE_TTL_MS);
+
+    // Streamed last price per traded pair.
+    private static final MarketStream marketStream =
+            new MarketStream(STREAM_URL, COINS_TO_TRADE, STREAM_STALE_MS);
+
+    // Closed bars persisted across restarts (see CandleArchive); the cache
+    // seeds from it and only downloads the tail since the newest stored bar.
+    private static final CandleArchive candleArchive =
+            new CandleArchive(Paths.get(setting("candles.archiveDir", "CANDLE_ARCHIVE_DIR", "candle_archive")));
+
+    private static final CandleCache candleCache =
+            new CandleCache(CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE::fetchCandles, candleArchive);
+
+    // One /futures/positions fetch per POSITIONS_SNAPSHOT_TTL_MS, shared by
+    // every consumer; invalidated after order and TP/SL writes.
+    private static final PositionBook positionBook =
+            new PositionBook(CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE::fetchPositions, POSITIONS_SNAPSHOT_TTL_MS);
+
+    private static final ExecutorService positionPageExecutor = Executors.newFixedThreadPool(POSITIONS_PAGE_WAVE, r -> {
+        Thread t = new Thread(r, "positions-page");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Per-scan candle requests by pipeline stage (see evaluatePair).
+    private static final AtomicInteger stageFetches1h  = new AtomicInteger();
+    private static final AtomicInteger stageFetches30m = new AtomicInteger();
+    private static final AtomicInteger stageFetches15m = new AtomicInteger();
+
+    private static final ExecutorService scanExecutor = Executors.newFixedThreadPool(SCAN_PARALLELISM, r -> {
+        Thread t = new Thread(r, "entry-scan");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static class TFResult {
         boolean valid;
         boolean bullish;
         boolean bearish;
@@ -146,7 +274,16 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         double  ema9, ema21, price;
         double  atr;
         double[] stBands;
-        double[] hi, lo, cl;
+        CandleSeries candles; // the analysed window (computeSlTp reads swing highs/lows from it)
+    }
+
+    // Outcome of evaluatePair(): whether the pair passed every gate, and the
+    // bits the (sequential) order-placement step needs from the analysis.
+    private static class ScanSignal {
+        boolean  passed;
+        boolean  trendUp;
+        TFResult tf2h;
+        String   log = "";
     }
 
     // =========================================================================
@@ -163,7 +300,7 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     //   price -> 105  => SL -> 102, TP -> 108
     //   Both gaps stay fixed at 3 for the life of the trade. SL/TP only ever
     //   move in the favorable direction, never backward.
-    private static class TrailState {
+    static class TrailState {
         boolean isLong;
         double entryPrice;
         double initialRisk;    // SL gap
@@ -189,37 +326,10 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     }
 
     // =========================================================================
-    // Trail state persistence (mirrors bot_state.json pattern)
+    // Trail state persistence (snapshot + write-ahead journal, TrailJournal)
     // =========================================================================
-    private static synchronized void loadTrailState() {
-        try {
-            Path p = Paths.get(TRAIL_STATE_FILE);
-            if (!Files.exists(p)) {
-                System.out.println("[TRAIL] No existing " + TRAIL_STATE_FILE + " — starting fresh.");
-                return;
-            }
-            String content = new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
-            if (content.trim().isEmpty()) return;
-            JSONObject root = new JSONObject(content);
-            for (String pair : root.keySet()) {
-                trailStateMap.put(pair, TrailState.fromJson(root.getJSONObject(pair)));
-            }
-            System.out.println("[TRAIL] Loaded trail state for " + trailStateMap.size() + " pair(s).");
-        } catch (Exception e) {
-            System.err.println("[TRAIL] loadTrailState failed (continuing with empty state): " + e.getMessage());
-        }
-    }
-
-    private static synchronized void saveTrailState() {
-        try {
-            JSONObject root = new JSONObject();
-            for (Map.Entry<String, TrailState> e : trailStateMap.entrySet()) {
-                root.put(e.getKey(), e.getValue().toJson());
-            }
-            Files.write(Paths.get(TRAIL_STATE_FILE), root.toString(2).getBytes(StandardCharsets.UTF_8));
-        } catch (Exception e) {
-            System.err.println("[TRAIL] saveTrailState failed: " + e.getMessage());
-        }
+    private static void loadTrailState() {
+        trailStates.load();
     }
 
     // =========================================================================
@@ -232,34 +342,112 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     //
     // Applied right after every candle fetch, before any indicator math runs
     // on that data (runEntryScan's raw15m/raw30m/raw1hExtended, and the 2H
-    // fallback fetch in ensureTpSlForOpenPositions).
+    // fallback fetch in protectPosition). Zero-copy: it's just a
+    // shorter CandleSeries view over the same columns.
     // =========================================================================
-    private static JSONArray dropLastIfForming(JSONArray arr) {
-        if (arr == null || arr.length() < 2) return arr;
-        JSONArray out = new JSONArray();
-        for (int i = 0; i < arr.length() - 1; i++) out.put(arr.getJSONObject(i));
-        return out;
+    private static CandleSeries dropLastIfForming(CandleSeries s) {
+        return s == null ? null : s.dropLast();
     }
 
-    private static TFResult analyzeTF(JSONArray candles) {
+    // =========================================================================
+    // Streaming indicators. Each (pair, timeframe) keeps an IndicatorState
+    // that is seeded once from the first window it sees and afterwards only
+    // advanced by the candles that closed since the previous scan (matched
+    // on open time), so analyzeTF() reads current EMA/ATR/Supertrend values
+    // instead of recomputing them over the whole history every 3 minutes.
+    //
+    // 2H/4H are aggregated anchored to the LAST closed 1h bar, so their
+    // group boundaries shift by one hour every hour. They therefore get one
+    // state per alignment phase (see aggKey) — each phase's state sees its
+    // own consistent series and advances by one bar every 2 (or 4) hours.
+    //
+    // A null key means "one-off": a throwaway state is seeded and dropped.
+    // If a stored state's last bar is no longer in the window (long outage,
+    // gap) it is simply re-seeded from the window.
+    //
+    // A carried state only matches a per-window recompute on its seeding
+    // window (see IndicatorState). Every DRIFT_CHECK_BARS bars it is compared
+    // to a state seeded on the current window and replaced by that one when
+    // any value is off by more than DRIFT_TOLERANCE or the Supertrend
+    // direction differs.
+    //
+    // The scan pool and the protection worker can advance the same key
+    // (a 2H state), so the advance runs inside compute() and callers get a
+    // copy to read.
+    // =========================================================================
+    private static final Map<String, IndicatorState> indicatorStates = new ConcurrentHashMap<>();
+    private static final int    DRIFT_CHECK_BARS = 16;
+    private static final double DRIFT_TOLERANCE  = 1e-3;
+    private static final AtomicInteger indicatorReseeds = new AtomicInteger();
+
+    private static IndicatorState newIndicatorState() {
+        return newIndicatorState(LIVE_PARAMS);
+    }
+
+    static IndicatorState newIndicatorState(StrategyParams p) {
+        return new IndicatorState(p.emaFast, p.emaMid, ATR_PERIOD, p.stPeriod, p.stMultiplier);
+    }
+
+    private static IndicatorState advanceState(String key, CandleSeries candles) {
+        if (key == null) return seedState(candles);
+        return indicatorStates.compute(key, (k, st) -> advance(st, candles)).copy();
+    }
+
+    private static IndicatorState advance(IndicatorState st, CandleSeries candles) {
+        int idx = st == null || st.lastTime() <= 0 ? -1 : candles.indexOfTime(st.lastTime());
+        if (idx < 0) return seedState(candles);
+        for (int i = idx + 1; i < candles.size(); i++) {
+            st.update(candles.time(i), candles.high(i), candles.low(i), candles.close(i));
+        }
+        if (st.barsSinceCheck() >= DRIFT_CHECK_BARS) {
+            IndicatorState fresh = seedState(candles);
+            if (st.driftsFrom(fresh, DRIFT_TOLERANCE)) {
+                indicatorReseeds.incrementAndGet();
+                return fresh;
+            }
+            st.markChecked();
+        }
+        return st;
+    }
+
+    private static IndicatorState seedState(CandleSeries candles) {
+        IndicatorState st = newIndicatorState();
+        for (int i = 0; i < candles.size(); i++) {
+            st.update(candles.time(i), candles.high(i), candles.low(i), candles.close(i));
+        }
+        st.markChecked();
+        return st;
+    }
+
+    // State key for an end-anchored aggregate: which hour-of-group the last
+    // 1h bar falls on decides the alignment of every group in the series.
+    private static String aggKey(String pair, String tf, CandleSeries src1h, int groupSize) {
+        if (src1h == null || src1h.size() == 0) return null;
+        long lastOpen = src1h.lastTime();
+        return pair + "|" + tf + "|" + Math.floorMod(lastOpen / 3_600_000L, groupSize);
+    }
+
+    static TFResult analyzeTF(String key, CandleSeries candles) {
         TFResult r = new TFResult();
-        if (candles == null || candles.length() < EMA_MID + ST_PERIOD + 5) {
+        if (candles == null || candles.size() < EMA_MID + ST_PERIOD + 5) {
             r.valid = false;
             return r;
         }
-        double[] cl = extractCloses(candles);
-        double[] hi = extractHighs(candles);
-        double[] lo = extractLows(candles);
-
-        r.cl = cl; r.hi = hi; r.lo = lo;
-        r.ema9  = calcEMA(cl, EMA_FAST);
-        r.ema21 = calcEMA(cl, EMA_MID);
-        r.price = cl[cl.length - 1];
-        r.atr   = calcATR(hi, lo, cl, ATR_PERIOD);
-
-        boolean[] stSeries = calcSupertrend(hi, lo, cl, ST_PERIOD, ST_MULTIPLIER);
-        r.stGreen  = stSeries[stSeries.length - 1];
-        r.stBands  = calcSupertrendBands(hi, lo, cl, ST_PERIOD, ST_MULTIPLIER);
+        return tfResult(advanceState(key, candles), candles);
+    }
+
+    // The per-timeframe trend verdict from an up-to-date indicator state.
+    // Shared by analyzeTF (live) and Backtester.
+    static TFResult tfResult(IndicatorState st, CandleSeries candles) {
+        TFResult r = new TFResult();
+        r.candles = candles;
+        r.ema9  = st.emaFast();
+        r.ema21 = st.emaMid();
+        r.price = st.lastClose();
+        r.atr   = st.atr();
+
+        r.stGreen  = st.stBullish();
+        r.stBands  = new double[]{st.stLower(), st.stUpper()};
         r.valid = true;
 
         boolean priceAboveEmas = r.price > r.ema9 && r.price > r.ema21;
@@ -272,6 +460,44 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         return r;
     }
 
+    // =========================================================================
+    // 15m entry rules (the last gates of evaluatePair, reused by Backtester).
+    // =========================================================================
+    static boolean is15mAligned(boolean trendUp, IndicatorState st15) {
+        return trendUp
+                ? (st15.stBullish() && st15.emaFast() > st15.emaMid())
+                : (!st15.stBullish() && st15.emaFast() < st15.emaMid());
+    }
+
+    // {distEMA9, distEMA21, distST, maxAllowed} for the entry candle's close.
+    static double[] pullbackDistances(boolean trendUp, double close, IndicatorState st15, StrategyParams p) {
+        return pullbackDistances(trendUp, close, st15.emaFast(), st15.emaMid(),
+                st15.stLower(), st15.stUpper(), st15.atr(), p.pullbackMaxAtr);
+    }
+
+    static double[] pullbackDistances(boolean trendUp, double close, double emaFast, double emaMid,
+                                      double stLower, double stUpper, double atr, double pullbackMaxAtr) {
+        double distSt = trendUp
+                ? Math.abs(close - stLower)
+                : Math.abs(close - stUpper);
+        return new double[]{
+                Math.abs(close - emaFast),
+                Math.abs(close - emaMid),
+                distSt,
+                pullbackMaxAtr * atr};
+    }
+
+    static boolean isPullback(double[] d) {
+        return d[0] <= d[3] || d[1] <= d[3] || d[2] <= d[3];
+    }
+
+    // Rejection pattern on bar i (with bar i-1 as the previous candle).
+    static boolean isRejection(boolean trendUp, CandleSeries s, int i) {
+        return trendUp
+                ? isBullishRejection(s.open(i), s.high(i), s.low(i), s.close(i), s.open(i - 1), s.close(i - 1))
+                : isBearishRejection(s.open(i), s.high(i), s.low(i), s.close(i), s.open(i - 1), s.close(i - 1));
+    }
+
     private static boolean isBullishRejection(double open, double high, double low, double close,
                                                double prevOpen, double prevClose) {
         double range = high - low;
@@ -314,60 +540,65 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         return shootingStar || bearishEngulf || strongBear;
     }
 
-    private static double findSwingLow(double[] lo, int lookback, int excludeRecent) {
-        int n = lo.length;
+    private static double findSwingLow(CandleSeries s, int lookback, int excludeRecent) {
+        int n = s.size();
         int start = Math.max(0, n - lookback - excludeRecent);
         int end   = Math.max(start, n - excludeRecent);
         double sw = Double.POSITIVE_INFINITY;
-        for (int i = start; i < end; i++) sw = Math.min(sw, lo[i]);
+        for (int i = start; i < end; i++) sw = Math.min(sw, s.low(i));
         return sw;
     }
 
-    private static double findSwingHigh(double[] hi, int lookback, int excludeRecent) {
-        int n = hi.length;
+    private static double findSwingHigh(CandleSeries s, int lookback, int excludeRecent) {
+        int n = s.size();
         int start = Math.max(0, n - lookback - excludeRecent);
         int end   = Math.max(start, n - excludeRecent);
         double sw = Double.NEGATIVE_INFINITY;
-        for (int i = start; i < end; i++) sw = Math.max(sw, hi[i]);
+        for (int i = start; i < end; i++) sw = Math.max(sw, s.high(i));
         return sw;
     }
 
-    private static double[] computeSlTp(boolean isLong, double entryPrice, TFResult tf2h, double tickSize) {
+    private static double[] computeSlTp(boolean isLong, double entryPrice, TFResult tf2h, TickMath.Tick tick) {
+        return computeSlTp(isLong, entryPrice, tf2h, tick, LIVE_PARAMS);
+    }
+
+    static double[] computeSlTp(boolean isLong, double entryPrice, TFResult tf2h, TickMath.Tick tick,
+                                StrategyParams p) {
         double sl, tp;
         if (isLong) {
-            double raw = tf2h.stBands[0] - SL_ATR_BUFFER * tf2h.atr;
-            if (raw >= entryPrice) raw = entryPrice - (SL_ATR_BUFFER + 1.5) * tf2h.atr;
+            double raw = tf2h.stBands[0] - p.slAtrBuffer * tf2h.atr;
+            if (raw >= entryPrice) raw = entryPrice - (p.slAtrBuffer + 1.5) * tf2h.atr;
             double hardFloor = entryPrice * (1 - SL_MAX_PERCENT / 100.0);
 
-            double swingLow = findSwingLow(tf2h.lo, SWING_LOOKBACK, SWING_EXCLUDE_RECENT);
+            double swingLow = findSwingLow(tf2h.candles, p.swingLookback, SWING_EXCLUDE_RECENT);
             if (swingLow < raw && swingLow > hardFloor) {
                 raw = swingLow - SWING_EXTRA_BUFFER_ATR * tf2h.atr;
             }
 
             sl = Math.max(raw, hardFloor);
             double risk = entryPrice - sl;
-            tp = entryPrice + RR_TARGET * risk;
+            tp = entryPrice + p.rrTarget * risk;
         } else {
-            double raw = tf2h.stBands[1] + SL_ATR_BUFFER * tf2h.atr;
-            if (raw <= entryPrice) raw = entryPrice + (SL_ATR_BUFFER + 1.5) * tf2h.atr;
+            double raw = tf2h.stBands[1] + p.slAtrBuffer * tf2h.atr;
+            if (raw <= entryPrice) raw = entryPrice + (p.slAtrBuffer + 1.5) * tf2h.atr;
             double hardCeil = entryPrice * (1 + SL_MAX_PERCENT / 100.0);
 
-            double swingHigh = findSwingHigh(tf2h.hi, SWING_LOOKBACK, SWING_EXCLUDE_RECENT);
+            double swingHigh = findSwingHigh(tf2h.candles, p.swingLookback, SWING_EXCLUDE_RECENT);
             if (swingHigh > raw && swingHigh < hardCeil) {
                 raw = swingHigh + SWING_EXTRA_BUFFER_ATR * tf2h.atr;
             }
 
             sl = Math.min(raw, hardCeil);
             double risk = sl - entryPrice;
-            tp = entryPrice - RR_TARGET * risk;
+            tp = entryPrice - p.rrTarget * risk;
         }
-        sl = roundToTick(sl, tickSize);
-        tp = roundToTick(tp, tickSize);
+        sl = roundToTick(sl, tick);
+        tp = roundToTick(tp, tick);
         return new double[]{sl, tp};
     }
 
-    private static double[] sanityClampSlTp(boolean isLong, double entry, double sl, double tp, double tick) {
-        double minGap = Math.max(tick, entry * 0.0005);
+    static double[] sanityClampSlTp(boolean isLong, double entry, double sl, double tp, TickMath.Tick tick) {
+        double minGap = Math.max(tick.size, entry * 0.0005);
         if (isLong) {
             if (sl >= entry - minGap) sl = entry - minGap;
             if (tp <= entry + minGap) tp = entry + minGap;
@@ -380,6 +611,28 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         return new double[]{sl, tp};
     }
 
+    // System property first, then environment variable, then the default.
+    static String setting(String property, String env, String def) {
+        String v = System.getProperty(property);
+        if (v == null || v.isEmpty()) v = System.getenv(env);
+        return v == null || v.isEmpty() ? def : v;
+    }
+
+    static void startProtectionWorker() {
+        protectionWorker.start(PROTECTION_CHECK_MS);
+    }
+
+    static String protectionStats() {
+        return protectionWorker.stats();
+    }
+
+    // Trades also drive the trailing engine directly, so a trigger is seen on
+    // the tick that crosses it rather than on the next price poll.
+    static void startMarketStream() {
+        if (TRAIL_ENABLED) marketStream.setListener((pair, price, timeMs) -> trailEngine.onPrice(pair, price));
+        marketStream.start();
+    }
+
     // =========================================================================
     // Orchestrator. This is a continuous 24x7 process instead of a
     // single scan-and-exit run. Two independent timers:
@@ -389,12 +642,16 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     public static void main(String[] args) {
         System.out.println("=== Bot starting (continuous mode) ===");
         loadTrailState();
+        tradeLedger.load();
         initInstrumentCache();
 
         // On startup, reconcile trail state against whatever is actually
         // open on the exchange right now — covers VM reboot / JVM crash
         // recovery so we never "lose track" of an existing position.
         reconcileTrailStateOnStartup();
+        startProtectionWorker();
+        if (STREAM_ENABLED) startMarketStream();
+        if (TRAIL_ENABLED) trailEngine.start(TRAIL_POLL_INTERVAL_MS);
 
         long lastEntryScan = 0L;
 
@@ -402,7 +659,7 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
             try {
                 long now = System.currentTimeMillis();
 
-                // ---- Trailing check (frequent) ----
+                // ---- Trailing: runs on its own threads (TrailEngine) ----
                 // trailOpenPositions();
                 // ---------------mai yaha trailing sl ko comment kr rha
 
@@ -445,16 +702,16 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
             Set<String> active = getActivePositions();
 
             // Drop trail state for anything no longer open.
-            trailStateMap.keySet().removeIf(pair -> !active.contains(pair));
+            trailStates.retainAll(active);
 
             for (String pair : active) {
-                if (trailStateMap.containsKey(pair)) continue;
-                JSONObject pos = findPosition(pair);
+                if (trailStates.contains(pair)) continue;
+                Position pos = findPosition(pair);
                 if (pos == null) continue;
-                double avgPrice = pos.optDouble("avg_price", 0);
-                double slTrig   = pos.optDouble("stop_loss_trigger", 0);
-                double tpTrig   = pos.optDouble("take_profit_trigger", 0);
-                double posQty   = pos.optDouble("active_pos", 0);
+                double avgPrice = pos.avgPrice();
+                double slTrig   = pos.stopLossTrigger();
+                double tpTrig   = pos.takeProfitTrigger();
+                double posQty   = pos.activePos();
                 if (avgPrice <= 0 || slTrig <= 0 || tpTrig <= 0) continue;
 
                 TrailState t = new TrailState();
@@ -462,12 +719,11 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
                 t.entryPrice = avgPrice;
                 t.initialRisk = Math.abs(avgPrice - slTrig);
                 t.initialReward = Math.abs(tpTrig - avgPrice);
-                trailStateMap.put(pair, t);
+                trailStates.put(pair, t);
                 System.out.println("[TRAIL] Reconstructed state on startup for " + pair
                         + " (entry=" + avgPrice + ", riskGap=" + t.initialRisk
                         + ", rewardGap=" + t.initialReward + ")");
             }
-            saveTrailState();
         } catch (Exception e) {
             System.err.println("reconcileTrailStateOnStartup: " + e.getMessage());
         }
@@ -625,9 +881,25 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     // just renamed so it can be invoked periodically from the continuous loop
     // above. FIX: candle fetches now go through dropLastIfForming() so trend
     // detection (4H/2H/1H/30M/15M) never runs on a still-forming candle.
+    //
+    // Parallel scan: the per-pair candle fetch + gate evaluation
+    // (evaluatePair) is fanned out over scanExecutor, since that part is
+    // pure read-only market data and ~all of its wall-clock is spent waiting
+    // on three blocking HTTP calls. Results are joined back IN
+    // COINS_TO_TRADE ORDER and orders are still placed one at a time on this
+    // thread, so MAX_OPEN_POSITIONS / cooldown / active-set bookkeeping is
+    // exactly as before. Each pair's log lines are buffered and printed as
+    // one block when its result is joined, so the output stays readable.
     // =========================================================================
-    private static void runEntryScan() {
-        Set<String> active = getActivePositions();
+    static void runEntryScan() {
+        Set<String> active;
+        try {
+            active = getActivePositions();
+        } catch (IOException e) {
+            // Without the full list every pair would look flat — skip the cycle.
+            System.err.println("runEntryScan: positions unavailable, skipping this scan: " + e.getMessage());
+            return;
+        }
         System.out.println("Active positions: " + active);
 
         if (active.size() >= MAX_OPEN_POSITIONS) {
@@ -637,272 +909,306 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
             return;
         }
 
+        long scanStart = System.currentTimeMillis();
+        List<String> candidates = new ArrayList<>();
         for (String pair : COINS_TO_TRADE) {
+            if (active.contains(pair)) {
+                System.out.println("Skip " + pair + " — active position");
+                continue;
+            }
+            long lastTrade = tradeLedger.lastPlaced(pair);
+            if (System.currentTimeMillis() - lastTrade < COOLDOWN_MS) {
+                System.out.println("  Skip " + pair + " — cooldown active");
+                continue;
+            }
+            candidates.add(pair);
+        }
+
+        stageFetches1h.set(0);
+        stageFetches30m.set(0);
+        stageFetches15m.set(0);
+
+        List<Future<ScanSignal>> results = new ArrayList<>(candidates.size());
+        for (String pair : candidates) {
+            results.add(scanExecutor.submit(() -> evaluatePair(pair)));
+        }
+
+        for (int i = 0; i < candidates.size(); i++) {
+            String pair = candidates.get(i);
             try {
                 if (active.size() >= MAX_OPEN_POSITIONS) {
                     System.out.println("MAX_OPEN_POSITIONS reached mid-scan — stopping.");
+                    for (int j = i; j < results.size(); j++) results.get(j).cancel(true);
                     break;
                 }
-                if (active.contains(pair)) {
-                    System.out.println("Skip " + pair + " — active position");
-                    continue;
-                }
-                long lastTrade = lastTradeTime.getOrDefault(pair, 0L);
-                if (System.currentTimeMillis() - lastTrade < COOLDOWN_MS) {
-                    System.out.println("  Skip " + pair + " — cooldown active");
+                ScanSignal sig;
+                try {
+                    sig = results.get(i).get(SCAN_PAIR_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException te) {
+                    results.get(i).cancel(true);
+                    System.err.println("Error on " + pair + ": evaluation timed out after " + SCAN_PAIR_TIMEOUT_MS + "ms");
                     continue;
                 }
-                System.out.println("\n==== " + pair + " ====");
-
-                // FIX: drop the last (possibly still-forming) candle from
-                // every fetched series BEFORE any indicator is computed on
-                // it. Previously only the 15m entry-signal candle avoided
-                // the live bar (via n15-2 indexing) while EVERY trend
-                // timeframe (4H/2H/1H/30M) and even the 15m indicator series
-                // itself (EMA/ATR/Supertrend) included the live, still-moving
-                // bar — causing indicators to flip as price ticked, which
-                // could silently flip the long/short decision.
-                JSONArray raw15m         = dropLastIfForming(getCandlestickData(pair, "15", CANDLE_15M));
-                JSONArray raw30m         = dropLastIfForming(getCandlestickData(pair, "30", CANDLE_30M));
-                JSONArray raw1hExtended  = dropLastIfForming(getCandlestickData(pair, "60", HTF_1H_FETCH_COUNT));
-                JSONArray raw1h          = lastN(raw1hExtended, CANDLE_1H);
-                JSONArray raw2h          = aggregateCandles(raw1hExtended, 2);
-                JSONArray raw4h          = aggregateCandles(raw1hExtended, 4);
-
-                if (raw15m == null || raw15m.length() < EMA_MID + 5) {
-                    System.out.println("  Insufficient 15m candles — skip"); continue;
-                }
-                if (raw30m == null || raw30m.length() < EMA_MID + 5) {
-                    System.out.println("  Insufficient 30m candles — skip"); continue;
-                }
+                System.out.print(sig.log);
+                if (!sig.passed) continue;
 
-                TFResult tf4h = analyzeTF(raw4h);
-                if (!tf4h.valid) {
-                    System.out.println("  [4H] insufficient data — skip"); continue;
-                }
-                System.out.printf("  [4H] ST=%s EMA9=%.6f EMA21=%.6f Price=%.6f → %s%n",
-                        tf4h.stGreen ? "GREEN" : "RED", tf4h.ema9, tf4h.ema21, tf4h.price,
-                        tf4h.bullish ? "BULLISH" : tf4h.bearish ? "BEARISH" : "NO CLEAR TREND");
-                if (!tf4h.bullish && !tf4h.bearish) {
-                    System.out.println("  4H FAIL — macro trend not clean — skip"); continue;
-                }
+                boolean trendUp = sig.trendUp;
+                TFResult tf2h = sig.tf2h;
+                String side = trendUp ? "buy" : "sell";
 
-                TFResult tf2h = analyzeTF(raw2h);
-                if (!tf2h.valid) {
-                    System.out.println("  [2H] insufficient data — skip"); continue;
-                }
-                System.out.printf("  [2H] ST=%s EMA9=%.6f EMA21=%.6f Price=%.6f → %s%n",
-                        tf2h.stGreen ? "GREEN" : "RED", tf2h.ema9, tf2h.ema21, tf2h.price,
-                        tf2h.bullish ? "BULLISH" : tf2h.bearish ? "BEARISH" : "NO CLEAR TREND");
-                boolean tf2hMatches4h = (tf4h.bullish && tf2h.bullish) || (tf4h.bearish && tf2h.bearish);
-                if (!tf2hMatches4h) {
-                    System.out.println("  2H FAIL — disagrees with (or unclear vs) 4H macro trend — skip");
+                double currentPrice = getLastPrice(pair);
+                if (currentPrice <= 0) { System.out.println("  Invalid price — skip"); continue; }
+                int instrument = instrumentId(pair);
+                double qty = calcQuantity(currentPrice, instrument);
+                if (qty <= 0) { System.out.println("  Invalid qty — skip"); continue; }
+                double minNotional = instruments.table().minNotional(instrument);
+                if (qty * currentPrice < minNotional) {
+                    System.out.printf("  Notional %.4f below min %.4f — skip%n", qty * currentPrice, minNotional);
                     continue;
                 }
+                int lev = leverageFor(instrument);
+                TickMath.Tick tick = instrumentTick(instrument);
 
-                TFResult tf1h = analyzeTF(raw1h);
-                if (!tf1h.valid) {
-                    System.out.println("  [1H] insufficient data — skip"); continue;
-                }
-                System.out.printf("  [1H] ST=%s EMA9=%.6f EMA21=%.6f Price=%.6f → %s%n",
-                        tf1h.stGreen ? "GREEN" : "RED", tf1h.ema9, tf1h.ema21, tf1h.price,
-                        tf1h.bullish ? "BULLISH" : tf1h.bearish ? "BEARISH" : "NO CLEAR TREND");
-
-                boolean trendUp;
-                if (tf4h.bullish && tf2h.bullish && tf1h.bullish) {
-                    trendUp = true;
-                } else if (tf4h.bearish && tf2h.bearish && tf1h.bearish) {
-                    trendUp = false;
-                } else {
-                    System.out.println("  1H DISAGREES (or unclear) with 4H/2H — no trade, wait — skip");
-                    continue;
-                }
-                System.out.println("  4H+2H+1H OK — " + (trendUp ? "BULLISH" : "BEARISH") + " confirmed on all three");
+                System.out.printf("  Placing %s | price=%.6f | qty=%.4f | lev=%dx%n",
+                        side.toUpperCase(), currentPrice, qty, lev);
 
-                TFResult tf30m = analyzeTF(raw30m);
-                if (!tf30m.valid) {
-                    System.out.println("  [30M] insufficient data — skip"); continue;
-                }
-                System.out.printf("  [30M] ST=%s EMA9=%.6f EMA21=%.6f Price=%.6f → %s%n",
-                        tf30m.stGreen ? "GREEN" : "RED", tf30m.ema9, tf30m.ema21, tf30m.price,
-                        tf30m.bullish ? "BULLISH" : tf30m.bearish ? "BEARISH" : "NO CLEAR TREND");
-                boolean tf30mAligned = trendUp ? tf30m.bullish : tf30m.bearish;
-                if (!tf30mAligned) {
-                    System.out.println("  30M FAIL — disagrees with (or unclear vs) 4H/2H/1H trend — skip");
-                    continue;
-                }
-                System.out.println("  30M OK — aligned with higher timeframes");
-
-                double[] cl15 = extractCloses(raw15m);
-                double[] op15 = extractOpens(raw15m);
-                double[] hi15 = extractHighs(raw15m);
-                double[] lo15 = extractLows(raw15m);
-                int n15 = cl15.length;
-
-                double ema9_15  = calcEMA(cl15, EMA_FAST);
-                double ema21_15 = calcEMA(cl15, EMA_MID);
-                double atr15    = calcATR(hi15, lo15, cl15, ATR_PERIOD);
-                boolean[] st15Series = calcSupertrend(hi15, lo15, cl15, ST_PERIOD, ST_MULTIPLIER);
-                boolean stBull15 = st15Series[st15Series.length - 1];
-                double[] stBands15 = calcSupertrendBands(hi15, lo15, cl15, ST_PERIOD, ST_MULTIPLIER);
-
-                boolean tf15Aligned = trendUp
-                        ? (stBull15 && ema9_15 > ema21_15)
-                        : (!stBull15 && ema9_15 < ema21_15);
-                System.out.printf("  [15M] ST=%s EMA9=%.6f EMA21=%.6f → %s%n",
-                        stBull15 ? "GREEN" : "RED", ema9_15, ema21_15,
-                        tf15Aligned ? "ALIGNED" : "NOT ALIGNED");
-                if (!tf15Aligned) {
-                    System.out.println("  15M FAIL — not aligned with higher-timeframe direction — skip"); continue;
+                // The order pipeline sets TP/SL itself; the protection worker
+                // keeps off the pair until the pipeline is done with it.
+                protectionWorker.hold(pair);
+                boolean tracked = false;
+                try {
+                    JSONObject resp = placeFuturesOrder(side, pair, instrument, qty, lev,
+                            "email_notification", "isolated", "INR", currentPrice);
+                    if (resp == null || !resp.has("id")) {
+                        System.out.println("  Order failed: " + resp); continue;
+                    }
+                    System.out.println("  Order placed! id=" + resp.getString("id"));
+                    tradeLedger.placed(resp.getString("id"), pair, side, qty, currentPrice);
+
+                    // Fill, position id and TP/SL happen on the pipeline; the
+                    // scan moves straight on to the next candidate.
+                    orderPipeline.track(pair, resp.getString("id"), entry -> {
+                        double[] slTp = computeSlTp(trendUp, entry, tf2h, tick);
+                        double[] clamped = sanityClampSlTp(trendUp, entry, slTp[0], slTp[1], tick);
+                        double slPct = Math.abs(entry - clamped[0]) / entry * 100;
+                        double tpPct = Math.abs(clamped[1] - entry) / entry * 100;
+                        System.out.printf("[ORDER] %s SL=%.6f (%.2f%%) | TP=%.6f (%.2f%%) | R:R target=%.1f%n",
+                                pair, clamped[0], slPct, clamped[1], tpPct, RR_TARGET);
+                        return clamped;
+                    }).whenComplete((o, err) -> {
+                        try {
+                            if (o != null) tradeLedger.settled(o.orderId, o.stage.name(), o.entry, o.sl, o.tp);
+                            if (o != null && o.stage == OrderPipeline.Stage.PROTECTED) {
+                                // Seed the trailing state for this fresh position.
+                                TrailState state = new TrailState();
+                                state.isLong = trendUp;
+                                state.entryPrice = o.entry;
+                                state.initialRisk = Math.abs(o.entry - o.sl);
+                                state.initialReward = Math.abs(o.tp - o.entry);
+                                trailStates.put(pair, state);
+                            } else {
+                                System.out.println("[ORDER] " + pair + " — handing TP/SL to the protection worker");
+                                protectionWorker.submit(pair);
+                            }
+                        } finally {
+                            protectionWorker.release(pair);
+                        }
+                    });
+                    tracked = true;
+                    active.add(pair);
+                } finally {
+                    if (!tracked) protectionWorker.release(pair);
                 }
 
-                // FIX: raw15m no longer contains a forming candle (it was
-                // dropped above), so index n15-1 is now genuinely the last
-                // CLOSED 15m candle. Previously this used n15-2 to dodge the
-                // live bar, which is no longer necessary and would now be
-                // one candle stale.
-                if (n15 < 2) { System.out.println("  Not enough 15m candles for entry check — skip"); continue; }
-                double entryClose = cl15[n15 - 1], entryOpen = op15[n15 - 1];
-                double entryHigh  = hi15[n15 - 1], entryLow  = lo15[n15 - 1];
-                double prevClose  = cl15[n15 - 2], prevOpen  = op15[n15 - 2];
-
-                double distEma9  = Math.abs(entryClose - ema9_15);
-                double distEma21 = Math.abs(entryClose - ema21_15);
-                double distSt    = trendUp
-                        ? Math.abs(entryClose - stBands15[0])
-                        : Math.abs(entryClose - stBands15[1]);
-                double maxDist   = PULLBACK_MAX_ATR * atr15;
-                boolean pullbackOk = distEma9 <= maxDist || distEma21 <= maxDist || distSt <= maxDist;
-                System.out.printf("  [15M-Pullback] distEMA9=%.6f distEMA21=%.6f distST=%.6f maxAllowed=%.6f → %s%n",
-                        distEma9, distEma21, distSt, maxDist, pullbackOk ? "PASS" : "FAIL");
-                if (!pullbackOk) {
-                    System.out.println("  15M FAIL — no valid pullback — skip"); continue;
-                }
+            } catch (Exception e) {
+                System.err.println("Error on " + pair + ": " + e.getMessage());
+            }
+        }
+        System.out.printf("%n=== Scan complete (%d pairs in %.1fs, %d threads) ===%n",
+                candidates.size(), (System.currentTimeMillis() - scanStart) / 1000.0, SCAN_PARALLELISM);
+        System.out.println("[HTTP] " + HttpTransport.stats());
+        System.out.println("[RATE] " + HttpTransport.rateStats());
+        System.out.println("[CANDLES] " + candleCache.stats());
+        System.out.println("[ARCHIVE] " + candleArchive.stats());
+        int f1h = stageFetches1h.get(), f30 = stageFetches30m.get(), f15 = stageFetches15m.get();
+        System.out.printf("[PIPELINE] 1h fetches=%d | 30m fetches=%d | 15m fetches=%d | saved=%d of %d%n",
+                f1h, f30, f15, 3 * f1h - (f1h + f30 + f15), 3 * f1h);
+        System.out.println("[INDICATORS] states=" + indicatorStates.size() + " | re-seeded on drift=" + indicatorReseeds.get());
+        System.out.println("[POSITIONS] " + positionBook.stats());
+        System.out.println("[INSTRUMENTS] " + instruments.stats());
+        if (STREAM_ENABLED) System.out.println("[STREAM] " + marketStream.stats());
+        if (TRAIL_ENABLED) System.out.println("[TRAIL] " + trailEngine.stats());
+        System.out.println("[TRAIL] journal: " + trailStates.stats());
+        System.out.println("[ORDERS] " + orderPipeline.stats());
+        System.out.println("[LEDGER] " + tradeLedger.stats());
+        System.out.println("[PROTECT] " + protectionStats());
+        ensureTpSlForOpenPositions();
+    }
 
-                boolean rejectionOk = trendUp
-                        ? isBullishRejection(entryOpen, entryHigh, entryLow, entryClose, prevOpen, prevClose)
-                        : isBearishRejection(entryOpen, entryHigh, entryLow, entryClose, prevOpen, prevClose);
-                System.out.printf("  [15M-Rejection] %s candle → %s%n",
-                        trendUp ? "Bullish" : "Bearish", rejectionOk ? "CONFIRMED" : "not present");
-                if (!rejectionOk) {
-                    System.out.println("  15M FAIL — no rejection candle confirmation — skip"); continue;
-                }
-                System.out.println("  15M OK — pullback + rejection candle confirmed");
+    // =========================================================================
+    // One pair's fetch + multi-timeframe gate sequence. Runs on a scan
+    // worker thread, so it must stay side-effect free: no orders, no shared
+    // state writes beyond the per-stage fetch counters — it only returns
+    // whether the pair passed, the direction, and the 2H TFResult that
+    // computeSlTp() needs later.
+    // =========================================================================
+    private static ScanSignal evaluatePair(String pair) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buf, true, StandardCharsets.UTF_8);
+        ScanSignal sig = new ScanSignal();
+        try {
+            out.println("\n==== " + pair + " ====");
+
+            // FIX: drop the last (possibly still-forming) candle from
+            // every fetched series BEFORE any indicator is computed on
+            // it. Previously only the 15m entry-signal candle avoided
+            // the live bar (via n15-2 indexing) while EVERY trend
+            // timeframe (4H/2H/1H/30M) and even the 15m indicator series
+            // itself (EMA/ATR/Supertrend) included the live, still-moving
+            // bar — causing indicators to flip as price ticked, which
+            // could silently flip the long/short decision.
+            //
+            // Staged fetch: only the 1h history is needed for the 4H/2H/1H
+            // gates, which reject most pairs. 30m is fetched only for pairs
+            // that pass them, and 15m only for pairs that also pass 30M.
+            stageFetches1h.incrementAndGet();
+            CandleSeries raw1hExtended  = dropLastIfForming(getCandlestickData(pair, "60", HTF_1H_FETCH_COUNT));
+            if (raw1hExtended == null) {
+                out.println("  1h candles unavailable — skip"); return sig;
+            }
+            CandleSeries raw1h          = raw1hExtended.lastN(CANDLE_1H);
+            CandleSeries raw2h          = aggregateCandles(raw1hExtended, 2);
+            CandleSeries raw4h          = aggregateCandles(raw1hExtended, 4);
 
-                String side = trendUp ? "buy" : "sell";
-                System.out.println("\n  ╔══════════════════════════════════════════════════╗");
-                System.out.println("  ║  ALL CONDITIONS PASSED → " + side.toUpperCase() + " " + pair);
-                System.out.println("  ╚══════════════════════════════════════════════════╝");
+            TFResult tf4h = analyzeTF(aggKey(pair, "4H", raw1hExtended, 4), raw4h);
+            if (!tf4h.valid) {
+                out.println("  [4H] insufficient data — skip"); return sig;
+            }
+            out.printf("  [4H] ST=%s EMA9=%.6f EMA21=%.6f Price=%.6f → %s%n",
+                    tf4h.stGreen ? "GREEN" : "RED", tf4h.ema9, tf4h.ema21, tf4h.price,
+                    tf4h.bullish ? "BULLISH" : tf4h.bearish ? "BEARISH" : "NO CLEAR TREND");
+            if (!tf4h.bullish && !tf4h.bearish) {
+                out.println("  4H FAIL — macro trend not clean — skip"); return sig;
+            }
 
-                double currentPrice = getLastPrice(pair);
-                if (currentPrice <= 0) { System.out.println("  Invalid price — skip"); continue; }
-                double qty = calcQuantity(currentPrice, pair);
-                if (qty <= 0) { System.out.println("  Invalid qty — skip"); continue; }
-                double tickSize = getTickSize(pair);
+            TFResult tf2h = analyzeTF(aggKey(pair, "2H", raw1hExtended, 2), raw2h);
+            if (!tf2h.valid) {
+                out.println("  [2H] insufficient data — skip"); return sig;
+            }
+            out.printf("  [2H] ST=%s EMA9=%.6f EMA21=%.6f Price=%.6f → %s%n",
+                    tf2h.stGreen ? "GREEN" : "RED", tf2h.ema9, tf2h.ema21, tf2h.price,
+                    tf2h.bullish ? "BULLISH" : tf2h.bearish ? "BEARISH" : "NO CLEAR TREND");
+            boolean tf2hMatches4h = (tf4h.bullish && tf2h.bullish) || (tf4h.bearish && tf2h.bearish);
+            if (!tf2hMatches4h) {
+                out.println("  2H FAIL — disagrees with (or unclear vs) 4H macro trend — skip");
+                return sig;
+            }
 
-                System.out.printf("  Placing %s | price=%.6f | qty=%.4f | lev=%dx%n",
-                        side.toUpperCase(), currentPrice, qty, LEVERAGE);
+            TFResult tf1h = analyzeTF(pair + "|1H", raw1h);
+            if (!tf1h.valid) {
+                out.println("  [1H] insufficient data — skip"); return sig;
+            }
+            out.printf("  [1H] ST=%s EMA9=%.6f EMA21=%.6f Price=%.6f → %s%n",
+                    tf1h.stGreen ? "GREEN" : "RED", tf1h.ema9, tf1h.ema21, tf1h.price,
+                    tf1h.bullish ? "BULLISH" : tf1h.bearish ? "BEARISH" : "NO CLEAR TREND");
+
+            boolean trendUp;
+            if (tf4h.bullish && tf2h.bullish && tf1h.bullish) {
+                trendUp = true;
+            } else if (tf4h.bearish && tf2h.bearish && tf1h.bearish) {
+                trendUp = false;
+            } else {
+                out.println("  1H DISAGREES (or unclear) with 4H/2H — no trade, wait — skip");
+                return sig;
+            }
+            out.println("  4H+2H+1H OK — " + (trendUp ? "BULLISH" : "BEARISH") + " confirmed on all three");
 
-                JSONObject resp = placeFuturesOrder(side, pair, qty, LEVERAGE,
-                        "email_notification", "isolated", "INR", currentPrice);
-                if (resp == null || !resp.has("id")) {
-                    System.out.println("  Order failed: " + resp); continue;
-                }
-                System.out.println("  Order placed! id=" + resp.getString("id"));
-                lastTradeTime.put(pair, System.currentTimeMillis());
+            stageFetches30m.incrementAndGet();
+            CandleSeries raw30m = dropLastIfForming(getCandlestickData(pair, "30", CANDLE_30M));
+            if (raw30m == null || raw30m.size() < EMA_MID + 5) {
+                out.println("  Insufficient 30m candles — skip"); return sig;
+            }
 
-                double entry = getEntryPrice(pair, resp.getString("id"));
-                if (entry <= 0) {
-                    System.out.println("  Could not confirm entry within window — TP/SL will be handled by end-of-scan safety sweep");
-                    active.add(pair);
-                    continue;
-                }
-                System.out.printf("  Entry confirmed: %.6f%n", entry);
-
-                double[] slTp = computeSlTp(trendUp, entry, tf2h, tickSize);
-                double[] clamped = sanityClampSlTp(trendUp, entry, slTp[0], slTp[1], tickSize);
-                double slPrice = clamped[0], tpPrice = clamped[1];
-                double slPct = Math.abs(entry - slPrice) / entry * 100;
-                double tpPct = Math.abs(tpPrice - entry) / entry * 100;
-                System.out.printf("  SL=%.6f (%.2f%%) | TP=%.6f (%.2f%%) | R:R target=%.1f%n",
-                        slPrice, slPct, tpPrice, tpPct, RR_TARGET);
-
-                String posId = getPositionId(pair);
-                if (posId != null) {
-                    boolean confirmed = setTpSlWithRetry(posId, tpPrice, slPrice, pair);
-                    if (confirmed) {
-                        // Seed the trailing state for this fresh position.
-                        TrailState state = new TrailState();
-                        state.isLong = trendUp;
-                        state.entryPrice = entry;
-                        state.initialRisk = Math.abs(entry - slPrice);
-                        state.initialReward = Math.abs(tpPrice - entry);
-                        trailStateMap.put(pair, state);
-                        saveTrailState();
-                    }
-                } else {
-                    System.out.println("  Position ID not found after retries — TP/SL will be handled by end-of-scan safety sweep");
-                }
+            TFResult tf30m = analyzeTF(pair + "|30M", raw30m);
+            if (!tf30m.valid) {
+                out.println("  [30M] insufficient data — skip"); return sig;
+            }
+            out.printf("  [30M] ST=%s EMA9=%.6f EMA21=%.6f Price=%.6f → %s%n",
+                    tf30m.stGreen ? "GREEN" : "RED", tf30m.ema9, tf30m.ema21, tf30m.price,
+                    tf30m.bullish ? "BULLISH" : tf30m.bearish ? "BEARISH" : "NO CLEAR TREND");
+            boolean tf30mAligned = trendUp ? tf30m.bullish : tf30m.bearish;
+            if (!tf30mAligned) {
+                out.println("  30M FAIL — disagrees with (or unclear vs) 4H/2H/1H trend — skip");
+                return sig;
+            }
+            out.println("  30M OK — aligned with higher timeframes");
 
-                active.add(pair);
+            stageFetches15m.incrementAndGet();
+            CandleSeries raw15m = dropLastIfForming(getCandlestickData(pair, "15", CANDLE_15M));
+            if (raw15m == null || raw15m.size() < EMA_MID + 5) {
+                out.println("  Insufficient 15m candles — skip"); return sig;
+            }
 
-            } catch (Exception e) {
-                System.err.println("Error on " + pair + ": " + e.getMessage());
+            int n15 = raw15m.size();
+
+            IndicatorState st15 = advanceState(pair + "|15M", raw15m);
+            boolean tf15Aligned = is15mAligned(trendUp, st15);
+            out.printf("  [15M] ST=%s EMA9=%.6f EMA21=%.6f → %s%n",
+                    st15.stBullish() ? "GREEN" : "RED", st15.emaFast(), st15.emaMid(),
+                    tf15Aligned ? "ALIGNED" : "NOT ALIGNED");
+            if (!tf15Aligned) {
+                out.println("  15M FAIL — not aligned with higher-timeframe direction — skip"); return sig;
             }
+
+            // FIX: raw15m no longer contains a forming candle (it was
+            // dropped above), so index n15-1 is now genuinely the last
+            // CLOSED 15m candle. Previously this used n15-2 to dodge the
+            // live bar, which is no longer necessary and would now be
+            // one candle stale.
+            if (n15 < 2) { out.println("  Not enough 15m candles for entry check — skip"); return sig; }
+
+            double[] pb = pullbackDistances(trendUp, raw15m.close(n15 - 1), st15, LIVE_PARAMS);
+            boolean pullbackOk = isPullback(pb);
+            out.printf("  [15M-Pullback] distEMA9=%.6f distEMA21=%.6f distST=%.6f maxAllowed=%.6f → %s%n",
+                    pb[0], pb[1], pb[2], pb[3], pullbackOk ? "PASS" : "FAIL");
+            if (!pullbackOk) {
+                out.println("  15M FAIL — no valid pullback — skip"); return sig;
+            }
+
+            boolean rejectionOk = isRejection(trendUp, raw15m, n15 - 1);
+            out.printf("  [15M-Rejection] %s candle → %s%n",
+                    trendUp ? "Bullish" : "Bearish", rejectionOk ? "CONFIRMED" : "not present");
+            if (!rejectionOk) {
+                out.println("  15M FAIL — no rejection candle confirmation — skip"); return sig;
+            }
+            out.println("  15M OK — pullback + rejection candle confirmed");
+
+            String side = trendUp ? "buy" : "sell";
+            out.println("\n  ╔══════════════════════════════════════════════════╗");
+            out.println("  ║  ALL CONDITIONS PASSED → " + side.toUpperCase() + " " + pair);
+            out.println("  ╚══════════════════════════════════════════════════╝");
+
+            sig.passed  = true;
+            sig.trendUp = trendUp;
+            sig.tf2h    = tf2h;
+            return sig;
+        } catch (Exception e) {
+            // Into the pair's own block, so it prints in order with the rest.
+            out.println("Error on " + pair + ": " + e.getMessage());
+            return sig;
+        } finally {
+            sig.log = buf.toString(StandardCharsets.UTF_8);
         }
-        System.out.println("\n=== Scan complete ===");
-        ensureTpSlForOpenPositions();
     }
 
+    // End-of-scan safety sweep: queue every open position that still has no
+    // TP/SL. The protection worker does the actual work (protectPosition), so
+    // the scan loop never blocks on candle fetches and create_tpsl retries.
     private static void ensureTpSlForOpenPositions() {
         try {
-            Set<String> stillOpen = getActivePositions();
-            for (String pair : stillOpen) {
-                JSONObject pos = findPosition(pair);
-                if (pos == null) continue;
-                double avgPrice = pos.optDouble("avg_price", 0);
-                double tpTrig   = pos.optDouble("take_profit_trigger", 0);
-                double slTrig   = pos.optDouble("stop_loss_trigger", 0);
-                if (avgPrice <= 0) continue;
-                if (tpTrig > 0 && slTrig > 0) continue;
-
-                System.out.println("  [SWEEP] " + pair + " missing TP/SL — computing fallback protection...");
-                // FIX: same dropLastIfForming() treatment as the main entry
-                // scan, so the fallback SL/TP calc (which reads tf2h.stBands
-                // and tf2h.atr) isn't skewed by an incomplete live 1H bar.
-                JSONArray raw1hExtended = dropLastIfForming(getCandlestickData(pair, "60", HTF_1H_FETCH_COUNT));
-                JSONArray raw2h = aggregateCandles(raw1hExtended, 2);
-                TFResult tf2h = analyzeTF(raw2h);
-                if (!tf2h.valid) {
-                    System.out.println("  [SWEEP] insufficient 2H data for " + pair + " — will retry next run");
-                    continue;
-                }
-
-                double posQty = pos.optDouble("active_pos", 0);
-                boolean isLong = posQty >= 0;
-
-                double tick = getTickSize(pair);
-                double[] slTp = computeSlTp(isLong, avgPrice, tf2h, tick);
-                double[] clamped = sanityClampSlTp(isLong, avgPrice, slTp[0], slTp[1], tick);
-                double sl = clamped[0], tp = clamped[1];
-
-                String posId = pos.optString("id", null);
-                if (posId != null) {
-                    System.out.printf("  [SWEEP] %s fallback SL=%.6f TP=%.6f (R:R target=%.1f)%n", pair, sl, tp, RR_TARGET);
-                    boolean confirmed = setTpSlWithRetry(posId, tp, sl, pair);
-                    if (confirmed) {
-                        // Seed trailing state here too, since this is also a
-                        // "first time TP/SL is set" moment.
-                        TrailState state = new TrailState();
-                        state.isLong = isLong;
-                        state.entryPrice = avgPrice;
-                        state.initialRisk = Math.abs(avgPrice - sl);
-                        state.initialReward = Math.abs(tp - avgPrice);
-                        trailStateMap.put(pair, state);
-                        saveTrailState();
-                    }
-                } else {
-                    System.out.println("  [SWEEP] " + pair + " — position ID missing, cannot set TP/SL");
+            for (String pair : unprotectedPositions()) {
+                if (protectionWorker.submit(pair)) {
+                    System.out.println("  [SWEEP] " + pair + " missing TP/SL — queued for the protection worker");
                 }
             }
         } catch (Exception e) {
@@ -910,37 +1216,83 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         }
     }
 
-    private static boolean setTpSlWithRetry(String posId, double tp, double sl, String pair) {
-        for (int attempt = 1; attempt <= TPSL_MAX_RETRIES; attempt++) {
-            setTpSl(posId, tp, sl, pair);
-            try {
-                TimeUnit.MILLISECONDS.sleep(TPSL_RETRY_DELAY_MS);
-            } catch (InterruptedException ignored) {}
-            try {
-                JSONObject pos = findPosition(pair);
-                if (pos != null && pos.optDouble("take_profit_trigger", 0) > 0
-                        && pos.optDouble("stop_loss_trigger", 0) > 0) {
-                    System.out.println("  TP/SL confirmed set on attempt " + attempt + " for " + pair);
-                    return true;
-                }
-            } catch (Exception ignored) {}
-            System.out.println("  TP/SL not confirmed yet (attempt " + attempt + "/" + TPSL_MAX_RETRIES + ") for " + pair + " — retrying...");
+    // Filled positions with no take_profit_trigger or stop_loss_trigger.
+    static List<String> unprotectedPositions() throws Exception {
+        List<String> out = new ArrayList<>();
+        for (Position p : positionBook.snapshot().all) {
+            String pair = p.pair();
+            if (pair == null || pair.isEmpty() || p.avgPrice() <= 0) continue;
+            if (p.takeProfitTrigger() <= 0 || p.stopLossTrigger() <= 0) out.add(pair);
         }
-        System.out.println("  WARNING: TP/SL could not be confirmed after " + TPSL_MAX_RETRIES + " attempts for " + pair
-                + " — will be retried by the next scan's safety sweep");
-        return false;
+        return out;
     }
 
-    private static JSONArray lastN(JSONArray arr, int n) {
-        if (arr == null) return null;
-        int len = arr.length();
-        if (len <= n) return arr;
-        JSONArray out = new JSONArray();
-        for (int i = len - n; i < len; i++) out.put(arr.getJSONObject(i));
-        return out;
+    // Fallback TP/SL for one position (ProtectionWorker). true once the
+    // position is protected, closed, or not filled yet; false to retry.
+    static boolean protectPosition(String pair) throws Exception {
+        Position pos = findPosition(pair);
+        if (pos == null) return true;
+        double avgPrice = pos.avgPrice();
+        double tpTrig   = pos.takeProfitTrigger();
+        double slTrig   = pos.stopLossTrigger();
+        if (avgPrice <= 0) return true;
+        if (tpTrig > 0 && slTrig > 0) return true;
+
+        System.out.println("[PROTECT] " + pair + " missing TP/SL — computing fallback protection...");
+        // FIX: same dropLastIfForming() treatment as the main entry
+        // scan, so the fallback SL/TP calc (which reads tf2h.stBands
+        // and tf2h.atr) isn't skewed by an incomplete live 1H bar.
+        CandleSeries raw1hExtended = dropLastIfForming(getCandlestickData(pair, "60", HTF_1H_FETCH_COUNT));
+        if (raw1hExtended == null) {
+            System.out.println("[PROTECT] 1h candles unavailable for " + pair);
+            return false;
+        }
+        CandleSeries raw2h = aggregateCandles(raw1hExtended, 2);
+        TFResult tf2h = analyzeTF(aggKey(pair, "2H", raw1hExtended, 2), raw2h);
+        if (!tf2h.valid) {
+            System.out.println("[PROTECT] insufficient 2H data for " + pair);
+            return false;
+        }
+
+        double posQty = pos.activePos();
+        boolean isLong = posQty >= 0;
+
+        TickMath.Tick tick = instrumentTick(instrumentId(pair));
+        double[] slTp = computeSlTp(isLong, avgPrice, tf2h, tick);
+        double[] clamped = sanityClampSlTp(isLong, avgPrice, slTp[0], slTp[1], tick);
+        double sl = clamped[0], tp = clamped[1];
+
+        String posId = pos.id();
+        if (posId == null) {
+            System.out.println("[PROTECT] " + pair + " — position ID missing, cannot set TP/SL");
+            return false;
+        }
+        System.out.printf("[PROTECT] %s fallback SL=%.6f TP=%.6f (R:R target=%.1f)%n", pair, sl, tp, RR_TARGET);
+        boolean confirmed = setTpSlWithRetry(posId, tp, sl, pair);
+        if (confirmed) {
+            // Seed trailing state here too, since this is also a
+            // "first time TP/SL is set" moment.
+            TrailState state = new TrailState();
+            state.isLong = isLong;
+            state.entryPrice = avgPrice;
+            state.initialRisk = Math.abs(avgPrice - sl);
+            state.initialReward = Math.abs(tp - avgPrice);
+            trailStates.put(pair, state);
+        }
+        return confirmed;
     }
 
-    private static double[] calcSupertrendBands(double[] hi, double[] lo, double[] cl,
+    // Blocking form of the pipeline's TP/SL step (protection worker, bench).
+    static boolean setTpSlWithRetry(String posId, double tp, double sl, String pair) {
+        return orderPipeline.confirmTpSl(posId, tp, sl, pair).join();
+    }
+
+    // Batch (full-array) indicator functions. The live path now goes through
+    // IndicatorState, which reproduces these recurrences bar-for-bar; these
+    // stay as the reference implementation for one-off / offline use.
+    // (Package-private, like analyzeTF/aggregateCandles/roundToTickBD, so the
+    // JMH suite under src/bench can call them.)
+    static double[] calcSupertrendBands(double[] hi, double[] lo, double[] cl,
                                                  int period, double multiplier) {
         int n = cl.length;
         if (n < period + 1) return new double[]{cl[n-1] * 0.97, cl[n-1] * 1.03};
@@ -964,7 +1316,7 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         return new double[]{lowerBand[n-1], upperBand[n-1]};
     }
 
-    private static boolean[] calcSupertrend(double[] hi, double[] lo, double[] cl,
+    static boolean[] calcSupertrend(double[] hi, double[] lo, double[] cl,
                                              int period, double multiplier) {
         int n = cl.length;
         boolean[] bullish = new boolean[n];
@@ -991,7 +1343,7 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         return bullish;
     }
 
-    private static double[] calcATRSeries(double[] hi, double[] lo, double[] cl, int period) {
+    static double[] calcATRSeries(double[] hi, double[] lo, double[] cl, int period) {
         int n = hi.length;
         double[] atr = new double[n];
         if (n < 2) return atr;
@@ -1022,7 +1374,7 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         return atr;
     }
 
-    private static double calcEMA(double[] d, int period) {
+    static double calcEMA(double[] d, int period) {
         if (d.length < period) return 0;
         double k = 2.0 / (period + 1), ema = 0;
         for (int i = 0; i < period; i++) ema += d[i];
@@ -1054,7 +1406,7 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     //   put into a JSON payload sent to the exchange; the plain double
     //   version below is kept for internal math/logging only.
     // =========================================================================
-    private static BigDecimal roundToTickBD(double price, double tick) {
+    static BigDecimal roundToTickBD(double price, double tick) {
         if (tick <= 0) return BigDecimal.valueOf(price);
         BigDecimal bdPrice = BigDecimal.valueOf(price);
         BigDecimal bdTick  = BigDecimal.valueOf(tick);
@@ -1065,57 +1417,37 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         return result.setScale(bdTick.scale(), RoundingMode.HALF_UP);
     }
 
-    private static double roundToTick(double price, double tick) {
-        if (tick <= 0) return price;
-        return roundToTickBD(price, tick).doubleValue();
+    // Long-arithmetic rounding (TickMath), same result as roundToTickBD.
+    static double roundToTick(double price, TickMath.Tick tick) {
+        return TickMath.round(price, tick);
     }
 
-    private static double[] extractCloses(JSONArray a) {
-        double[] o = new double[a.length()];
-        for (int i = 0; i < a.length(); i++) o[i] = a.getJSONObject(i).getDouble("close");
-        return o;
-    }
-    private static double[] extractOpens(JSONArray a) {
-        double[] o = new double[a.length()];
-        for (int i = 0; i < a.length(); i++) o[i] = a.getJSONObject(i).getDouble("open");
-        return o;
-    }
-    private static double[] extractHighs(JSONArray a) {
-        double[] o = new double[a.length()];
-        for (int i = 0; i < a.length(); i++) o[i] = a.getJSONObject(i).getDouble("high");
-        return o;
-    }
-    private static double[] extractLows(JSONArray a) {
-        double[] o = new double[a.length()];
-        for (int i = 0; i < a.length(); i++) o[i] = a.getJSONObject(i).getDouble("low");
-        return o;
+    // Served from candleCache: after the first full window per
+    // (pair, resolution), only the newest bars are actually downloaded.
+    private static CandleSeries getCandlestickData(String pair, String resolution, int count) {
+        long minsPerBar;
+        switch (resolution) {
+            case "5":   minsPerBar = 5;   break;
+            case "15":  minsPerBar = 15;  break;
+            case "30":  minsPerBar = 30;  break;
+            case "60":  minsPerBar = 60;  break;
+            case "120": minsPerBar = 120; break;
+            default:    minsPerBar = 15;  break;
+        }
+        return candleCache.get(pair, resolution, count, minsPerBar);
     }
 
-    private static JSONArray getCandlestickData(String pair, String resolution, int count) {
+    static CandleSeries fetchCandles(String pair, String resolution, long from, long to) {
         try {
-            long minsPerBar;
-            switch (resolution) {
-                case "5":   minsPerBar = 5;   break;
-                case "15":  minsPerBar = 15;  break;
-                case "30":  minsPerBar = 30;  break;
-                case "60":  minsPerBar = 60;  break;
-                case "120": minsPerBar = 120; break;
-                default:    minsPerBar = 15;  break;
-            }
-            long to   = Instant.now().getEpochSecond();
-            long from = to - minsPerBar * 60L * count;
             String url = PUBLIC_API_URL + "/market_data/candlesticks"
                     + "?pair=" + pair + "&from=" + from + "&to=" + to
                     + "&resolution=" + resolution + "&pcode=f";
-            HttpURLConnection conn = openGet(url);
-            int code = conn.getResponseCode();
-            if (code == 200) {
-                JSONObject r = new JSONObject(readStream(conn.getInputStream()));
-                if ("ok".equals(r.optString("s"))) return r.getJSONArray("data");
-                System.err.println("  Candle s=" + r.optString("s") + " " + pair);
-            } else {
+            // Streamed straight from the socket into primitive columns.
+            return HttpTransport.get(url, HttpTransport.Endpoint.MARKET_DATA, (code, in) -> {
+                if (code == 200) return ExchangeJson.parseCandles(in);
                 System.err.println("  Candle HTTP " + code + " " + pair);
-            }
+                return null;
+            });
         } catch (Exception e) {
             System.err.println("  getCandlestickData(" + pair + "/" + resolution + "): " + e.getMessage());
         }
@@ -1123,76 +1455,114 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     }
 
     private static void initInstrumentCache() {
-        try {
-            long now = System.currentTimeMillis();
-            if (now - lastCacheUpdate < TICK_CACHE_TTL_MS) return;
-            instrumentCache.clear();
-            System.out.println("Refreshing instrument cache...");
-            JSONArray pairs = new JSONArray(publicGet(
-                    BASE_URL + "/exchange/v1/derivatives/futures/data/active_instruments"));
-            for (int i = 0; i < pairs.length(); i++) {
-                String p = pairs.getString(i);
+        instruments.bootstrap();
+    }
+
+    // The pair's InstrumentTable id. Fixed for the process, so the order
+    // path resolves it once and passes it down.
+    static int instrumentId(String pair) {
+        return instruments.id(pair);
+    }
+
+    private static TickMath.Tick instrumentTick(int instrument) {
+        return instruments.table().tick(instrument);
+    }
+
+    static double getEntryPrice(String pair, String orderId) throws Exception {
+        return orderPipeline.entry(pair).join();
+    }
+
+    private static Position findPosition(String pair) throws Exception {
+        return positionBook.find(pair);
+    }
+
+    // ALL open positions, across every page of /futures/positions. A failed
+    // page fails the whole listing: a partial list would make the missing
+    // pairs look flat (re-entered, never protected), which is worse than
+    // skipping a cycle.
+    private static List<Position> fetchPositions() throws IOException {
+        List<Position> first = fetchPositionsPage(1);
+        if (first.size() < POSITIONS_PAGE_SIZE) return first;
+
+        // Keyed by id: positions opening/closing while we walk the pages can
+        // shift an entry onto the next page, so it may show up twice.
+        Map<String, Position> merged = new LinkedHashMap<>();
+        addPositions(merged, first);
+
+        int nextPage = 2;
+        boolean more = true;
+        while (more && nextPage <= POSITIONS_MAX_PAGES) {
+            List<Future<List<Position>>> wave = new ArrayList<>();
+            for (int i = 0; i < POSITIONS_PAGE_WAVE && nextPage <= POSITIONS_MAX_PAGES; i++) {
+                final int page = nextPage++;
+                wave.add(positionPageExecutor.submit(() -> fetchPositionsPage(page)));
+            }
+            for (Future<List<Position>> f : wave) {
+                List<Position> page;
                 try {
-                    String raw = publicGet(
-                            BASE_URL + "/exchange/v1/derivatives/futures/data/instrument?pair=" + p);
-                    instrumentCache.put(p, new JSONObject(raw).getJSONObject("instrument"));
-                } catch (Exception ignored) {}
+                    page = f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("positions page fetch interrupted", e);
+                } catch (ExecutionException e) {
+                    Throwable c = e.getCause();
+                    throw c instanceof IOException ? (IOException) c : new IOException(c);
+                }
+                addPositions(merged, page);
+                if (page.size() < POSITIONS_PAGE_SIZE) more = false;
             }
-            lastCacheUpdate = now;
-            System.out.println("Instruments cached: " + instrumentCache.size());
-        } catch (Exception e) {
-            System.err.println("initInstrumentCache: " + e.getMessage());
         }
+        if (more) {
+            System.err.println("fetchPositions: stopped at " + POSITIONS_MAX_PAGES + " pages, listing may be incomplete");
+        }
+        return new ArrayList<>(merged.values());
     }
 
-    private static double getTickSize(String pair) {
-        if (System.currentTimeMillis() - lastCacheUpdate > TICK_CACHE_TTL_MS) initInstrumentCache();
-        JSONObject d = instrumentCache.get(pair);
-        return d != null ? d.optDouble("price_increment", 0.0001) : 0.0001;
-    }
-
-    private static double getEntryPrice(String pair, String orderId) throws Exception {
-        for (int i = 0; i < MAX_ENTRY_PRICE_CHECKS; i++) {
-            TimeUnit.MILLISECONDS.sleep(ENTRY_CHECK_DELAY_MS);
-            JSONObject pos = findPosition(pair);
-            if (pos != null && pos.optDouble("avg_price", 0) > 0)
-                return pos.getDouble("avg_price");
+    private static void addPositions(Map<String, Position> merged, List<Position> page) {
+        for (Position p : page) {
+            merged.putIfAbsent(p.id() != null ? p.id() : p.pair(), p);
         }
-        return 0;
     }
 
-    private static JSONObject findPosition(String pair) throws Exception {
+    // One /futures/positions page, decoded by ExchangeJson straight from the
+    // response stream into Position records.
+    private static List<Position> fetchPositionsPage(int page) throws IOException {
         JSONObject body = new JSONObject();
-        body.put("timestamp", Instant.now().toEpochMilli());
-        body.put("page", "1");
-        body.put("size", "100");
+        body.put("page", String.valueOf(page));
+        body.put("size", String.valueOf(POSITIONS_PAGE_SIZE));
         body.put("margin_currency_short_name", new String[]{"INR", "USDT"});
-        String resp = authPost(BASE_URL + "/exchange/v1/derivatives/futures/positions", body.toString());
-        JSONArray arr = resp.startsWith("[")
-                ? new JSONArray(resp) : new JSONArray().put(new JSONObject(resp));
-        for (int i = 0; i < arr.length(); i++) {
-            JSONObject p = arr.getJSONObject(i);
-            if (pair.equals(p.optString("pair"))) return p;
-        }
-        return null;
+        return authPost(BASE_URL + "/exchange/v1/derivatives/futures/positions", body,
+                HttpTransport.Endpoint.PRIVATE_POSITIONS, (code, in) -> {
+                    if (code != 200) throw new IOException("positions page " + page + " HTTP " + code);
+                    return ExchangeJson.parsePositions(in);
+                });
     }
 
-    private static double calcQuantity(double price, String pair) {
+    private static double calcQuantity(double price, int instrument) {
         double usdtInrRate = 98.0;
         // double qty = (MAX_MARGIN * LEVERAGE) / (price * usdtInrRate);
         double qty = MAX_MARGIN / (price * usdtInrRate);
-        double finalQty = INTEGER_QTY_PAIRS.contains(pair)
-                ? Math.floor(qty)
-                : Math.floor(qty * 100) / 100.0;
+        // Floored to the instrument's quantity_increment (see InstrumentTable).
+        double finalQty = instruments.table().floorQty(instrument, qty);
         return Math.max(finalQty, 0);
     }
 
+    // LEVERAGE, capped at the instrument's max leverage when it has one.
+    private static int leverageFor(int instrument) {
+        int max = instruments.table().maxLeverage(instrument);
+        return max > 0 ? Math.min(LEVERAGE, max) : LEVERAGE;
+    }
+
+    // Streamed price when the stream is healthy, REST otherwise.
     public static double getLastPrice(String pair) {
+        double streamed = marketStream.lastPrice(pair);
+        if (streamed > 0) return streamed;
         try {
-            HttpURLConnection conn = openGet(
-                    PUBLIC_API_URL + "/market_data/trade_history?pair=" + pair + "&limit=1");
-            if (conn.getResponseCode() == 200) {
-                String r = readStream(conn.getInputStream());
+            HttpTransport.HttpResult res = HttpTransport.get(
+                    PUBLIC_API_URL + "/market_data/trade_history?pair=" + pair + "&limit=1",
+                    HttpTransport.Endpoint.MARKET_DATA);
+            if (res.code == 200) {
+                String r = res.body;
                 return r.startsWith("[")
                         ? new JSONArray(r).getJSONObject(0).getDouble("p")
                         : new JSONObject(r).getDouble("p");
@@ -1203,7 +1573,7 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         return 0;
     }
 
-    public static JSONObject placeFuturesOrder(String side, String pair, double qty,
+    public static JSONObject placeFuturesOrder(String side, String pair, int instrument, double qty,
                                                      int lev, String notif,
                                                      String marginType, String marginCcy,
                                                      double currentPrice) {
@@ -1211,18 +1581,17 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
             double rawLimitPrice = "buy".equalsIgnoreCase(side)
                     ? currentPrice * (1 + LIMIT_ORDER_BUFFER_PCT)
                     : currentPrice * (1 - LIMIT_ORDER_BUFFER_PCT);
-            double tick = getTickSize(pair);
-            // FIX: put the exact BigDecimal in the JSON, not a double, so the
+            TickMath.Tick tick = instrumentTick(instrument);
+            // FIX: put the exact decimal in the JSON, not a double, so the
             // exchange's tick-divisibility check never sees floating-point
             // noise like 0.026099999999999998.
-            BigDecimal limitPriceBD = roundToTickBD(rawLimitPrice, tick);
-            double limitPrice = limitPriceBD.doubleValue(); // for logging only
+            Object limitPriceExact = TickMath.json(rawLimitPrice, tick);
 
             JSONObject order = new JSONObject();
             order.put("side",                       side.toLowerCase());
             order.put("pair",                       pair);
             order.put("order_type",                 "limit_order");
-            order.put("price",                      limitPriceBD);
+            order.put("price",                      limitPriceExact);
             order.put("total_quantity",             qty);
             order.put("leverage",                   lev);
             order.put("notification",               notif);
@@ -1232,10 +1601,11 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
             order.put("position_margin_type",       marginType);
             order.put("margin_currency_short_name", marginCcy);
             JSONObject body = new JSONObject();
-            body.put("timestamp", Instant.now().toEpochMilli());
             body.put("order", order);
             String resp = authPost(
-                    BASE_URL + "/exchange/v1/derivatives/futures/orders/create", body.toString());
+                    BASE_URL + "/exchange/v1/derivatives/futures/orders/create", body,
+                    HttpTransport.Endpoint.PRIVATE_ORDERS);
+            positionBook.invalidate();
             return resp.startsWith("[")
                     ? new JSONArray(resp).getJSONObject(0)
                     : new JSONObject(resp);
@@ -1247,12 +1617,12 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
 
     public static void setTpSl(String posId, double tp, double sl, String pair) {
         try {
-            double tick = getTickSize(pair);
-            // FIX: same BigDecimal-exact rounding as the entry order — avoids
+            TickMath.Tick tick = instrumentTick(instrumentId(pair));
+            // FIX: same exact-decimal rounding as the entry order — avoids
             // create_tpsl being silently rejected for the same
             // divisible-by-tick reason.
-            BigDecimal rtp = roundToTickBD(tp, tick);
-            BigDecimal rsl = roundToTickBD(sl, tick);
+            Object rtp = TickMath.json(tp, tick);
+            Object rsl = TickMath.json(sl, tick);
             JSONObject tpObj = new JSONObject();
             tpObj.put("stop_price",  rtp);
             tpObj.put("limit_price", rtp);
@@ -1262,13 +1632,13 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
             slObj.put("limit_price", rsl);
             slObj.put("order_type",  "stop_market");
             JSONObject payload = new JSONObject();
-            payload.put("timestamp",   Instant.now().toEpochMilli());
             payload.put("id",          posId);
             payload.put("take_profit", tpObj);
             payload.put("stop_loss",   slObj);
             String resp = authPost(
                     BASE_URL + "/exchange/v1/derivatives/futures/positions/create_tpsl",
-                    payload.toString());
+                    payload, HttpTransport.Endpoint.PRIVATE_ORDERS);
+            positionBook.invalidate();
             JSONObject r = new JSONObject(resp);
             System.out.println(r.has("err_code_dcx") ? "  TP/SL error: " + r : "  TP/SL set successfully!");
         } catch (Exception e) {
@@ -1277,96 +1647,65 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
     }
 
     public static String getPositionId(String pair) {
-        for (int attempt = 1; attempt <= POSITION_ID_MAX_RETRIES; attempt++) {
-            try {
-                JSONObject p = findPosition(pair);
-                if (p != null && p.has("id")) return p.getString("id");
-            } catch (Exception e) {
-                System.err.println("getPositionId attempt " + attempt + ": " + e.getMessage());
-            }
-            try {
-                TimeUnit.MILLISECONDS.sleep(POSITION_ID_RETRY_DELAY_MS);
-            } catch (InterruptedException ignored) {}
-        }
-        return null;
+        return orderPipeline.positionId(pair).join();
     }
 
-    private static Set<String> getActivePositions() {
+    // Throws if the listing failed: an empty set would read as "nothing open".
+    private static Set<String> getActivePositions() throws IOException {
         Set<String> active = new HashSet<>();
-        try {
-            JSONObject body = new JSONObject();
-            body.put("timestamp", Instant.now().toEpochMilli());
-            body.put("page", "1");
-            body.put("size", "100");
-            body.put("margin_currency_short_name", new String[]{"INR", "USDT"});
-            String resp = authPost(BASE_URL + "/exchange/v1/derivatives/futures/positions", body.toString());
-            JSONArray arr = resp.startsWith("[")
-                    ? new JSONArray(resp) : new JSONArray().put(new JSONObject(resp));
-            System.out.println("=== Open Positions (" + arr.length() + ") ===");
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject p    = arr.getJSONObject(i);
-                String    pair  = p.optString("pair", "");
-                boolean isActive = p.optDouble("active_pos", 0) > 0
-                        || p.optDouble("locked_margin", 0) > 0
-                        || p.optDouble("avg_price", 0) > 0
-                        || p.optDouble("take_profit_trigger", 0) > 0
-                        || p.optDouble("stop_loss_trigger", 0) > 0;
-                if (isActive) {
-                    System.out.printf("  %s | qty=%.2f | entry=%.6f | TP=%.4f | SL=%.4f%n",
-                            pair, p.optDouble("active_pos", 0), p.optDouble("avg_price", 0),
-                            p.optDouble("take_profit_trigger", 0), p.optDouble("stop_loss_trigger", 0));
-                    active.add(pair);
-                }
+        List<Position> all = positionBook.snapshot().all;
+        System.out.println("=== Open Positions (" + all.size() + ") ===");
+        for (Position p : all) {
+            String pair = p.pair();
+            boolean isActive = p.activePos() > 0
+                    || p.lockedMargin() > 0
+                    || p.avgPrice() > 0
+                    || p.takeProfitTrigger() > 0
+                    || p.stopLossTrigger() > 0;
+            if (isActive) {
+                System.out.printf("  %s | qty=%.2f | entry=%.6f | TP=%.4f | SL=%.4f%n",
+                        pair, p.activePos(), p.avgPrice(), p.takeProfitTrigger(), p.stopLossTrigger());
+                active.add(pair);
             }
-        } catch (Exception e) {
-            System.err.println("getActivePositions: " + e.getMessage());
         }
         return active;
     }
 
-    private static HttpURLConnection openGet(String url) throws IOException {
-        HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
-        c.setRequestMethod("GET");
-        c.setConnectTimeout(10_000);
-        c.setReadTimeout(10_000);
-        return c;
+    // All REST helpers route through HttpTransport (pooled keep-alive
+    // OkHttp client) — see HttpTransport for the per-endpoint timeouts.
+    private static String publicGet(String url) throws IOException {
+        HttpTransport.HttpResult res = HttpTransport.get(url, HttpTransport.Endpoint.REFERENCE_DATA);
+        if (res.code == 200) return res.body;
+        throw new IOException("HTTP " + res.code + " — " + url);
     }
 
-    private static String publicGet(String url) throws IOException {
-        HttpURLConnection c = openGet(url);
-        if (c.getResponseCode() == 200) return readStream(c.getInputStream());
-        throw new IOException("HTTP " + c.getResponseCode() + " — " + url);
-    }
-
-    private static String authPost(String url, String json) throws IOException {
-        HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
-        c.setRequestMethod("POST");
-        c.setRequestProperty("Content-Type",     "application/json");
-        c.setRequestProperty("X-AUTH-APIKEY",    API_KEY);
-        c.setRequestProperty("X-AUTH-SIGNATURE", sign(json));
-        c.setConnectTimeout(10_000);
-        c.setReadTimeout(10_000);
-        c.setDoOutput(true);
-        try (OutputStream os = c.getOutputStream()) {
-            os.write(json.getBytes(StandardCharsets.UTF_8));
-        }
-        InputStream is = c.getResponseCode() >= 400 ? c.getErrorStream() : c.getInputStream();
-        return readStream(is);
+    private static String authPost(String url, JSONObject body, HttpTransport.Endpoint ep) throws IOException {
+        // Error bodies (>= 400) are returned as-is, same as before — callers
+        // inspect them for err_code_dcx / missing "id".
+        return HttpTransport.postJson(url, () -> stamped(body), CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE::authHeaders, ep).body;
+    }
+
+    private static <T> T authPost(String url, JSONObject body, HttpTransport.Endpoint ep,
+                                  HttpTransport.BodyReader<T> reader) throws IOException {
+        return HttpTransport.postJson(url, () -> stamped(body), CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE::authHeaders, ep, reader);
     }
 
-    private static String readStream(InputStream is) throws IOException {
-        return new BufferedReader(new InputStreamReader(is))
-                .lines().collect(Collectors.joining("\n"));
+    // The signed "timestamp" is set per attempt: a 429 retry goes out a
+    // Retry-After pause later and must not carry the first attempt's stamp.
+    private static String stamped(JSONObject body) {
+        return body.put("timestamp", Instant.now().toEpochMilli()).toString();
+    }
+
+    private static Map<String, String> authHeaders(String json) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-AUTH-APIKEY",    API_KEY);
+        headers.put("X-AUTH-SIGNATURE", sign(json));
+        return headers;
     }
 
     private static String sign(String payload) {
         try {
-            Mac mac = Mac.getInstance("HmacSHA256");
-            mac.init(new SecretKeySpec(API_SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
-            byte[] b = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte x : b) sb.append(String.format("%02x", x));
-            return sb.toString();
+            return signer.sign(payload);
         } catch (Exception e) {
             throw new RuntimeException("HMAC sign failed", e);
         }
@@ -1376,30 +1715,9 @@ public class CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE {
         return sign(payload);
     }
 
-    private static JSONArray aggregateCandles(JSONArray source, int groupSize) {
-        if (source == null || source.length() < groupSize) return null;
-        int n = source.length();
-        int usableCount = (n / groupSize) * groupSize;
-        int startIdx = n - usableCount;
-        JSONArray result = new JSONArray();
-        for (int i = startIdx; i < n; i += groupSize) {
-            double open  = source.getJSONObject(i).getDouble("open");
-            double close = source.getJSONObject(i + groupSize - 1).getDouble("close");
-            double high  = Double.NEGATIVE_INFINITY;
-            double low   = Double.POSITIVE_INFINITY;
-            for (int j = i; j < i + groupSize; j++) {
-                JSONObject c = source.getJSONObject(j);
-                high = Math.max(high, c.getDouble("high"));
-                low  = Math.min(low,  c.getDouble("low"));
-            }
-            JSONObject merged = new JSONObject();
-            merged.put("open", open);
-            merged.put("close", close);
-            merged.put("high", high);
-            merged.put("low", low);
-            result.put(merged);
-        }
-        return result;
+    // 2H/4H bars built from 1h: groups anchored at the latest closed bar.
+    static CandleSeries aggregateCandles(CandleSeries source, int groupSize) {
+        return source == null ? null : source.aggregate(groupSize);
     }
 }
 
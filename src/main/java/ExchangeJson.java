@@ -0,0 +1,128 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// =============================================================================
+// Streaming (Jackson JsonParser) decoders for the two hottest responses:
+// candlesticks and futures positions. They read straight off the HTTP
+// InputStream into primitive columns / Position records — no intermediate
+// String, no org.json DOM, no second walk to pull doubles back out.
+//
+// Numeric fields are accepted either as JSON numbers or numeric strings, and
+// null/missing values decode to 0, matching the optDouble(...) defaults the
+// DOM-based code used.
+// =============================================================================
+final class ExchangeJson {
+
+    // JsonFactory is thread-safe and meant to be shared.
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private ExchangeJson() {}
+
+    // {"s":"ok","data":[{"open":..,"high":..,"low":..,"close":..,"volume":..,"time":..}, ...]}
+    // Throws if "s" is anything other than "ok".
+    static CandleSeries parseCandles(InputStream in) throws IOException {
+        try (JsonParser p = FACTORY.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw new IOException("candles: expected object");
+            String status = null;
+            int n = 0, cap = 256;
+            long[]   t = new long[cap];
+            double[] o = new double[cap], h = new double[cap], l = new double[cap],
+                     c = new double[cap], v = new double[cap];
+
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken tok = p.nextToken();
+                if ("s".equals(field)) {
+                    status = p.getValueAsString();
+                } else if ("data".equals(field) && tok == JsonToken.START_ARRAY) {
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        if (n == cap) {
+                            cap *= 2;
+                            t = Arrays.copyOf(t, cap);
+                            o = Arrays.copyOf(o, cap); h = Arrays.copyOf(h, cap); l = Arrays.copyOf(l, cap);
+                            c = Arrays.copyOf(c, cap); v = Arrays.copyOf(v, cap);
+                        }
+                        while (p.nextToken() == JsonToken.FIELD_NAME) {
+                            String k = p.currentName();
+                            p.nextToken();
+                            switch (k) {
+                                case "time":   t[n] = (long) num(p); break;
+                                case "open":   o[n] = num(p); break;
+                                case "high":   h[n] = num(p); break;
+                                case "low":    l[n] = num(p); break;
+                                case "close":  c[n] = num(p); break;
+                                case "volume": v[n] = num(p); break;
+                                default:       p.skipChildren(); break;
+                            }
+                        }
+                        n++;
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+            if (!"ok".equals(status)) throw new IOException("s=" + status);
+            return new CandleSeries(t, o, h, l, c, v, 0, n);
+        }
+    }
+
+    // Either a JSON array of position objects or a single object (the
+    // exchange answers errors with one object) — the latter decodes to a
+    // one-element list whose pair is "" so callers naturally ignore it.
+    static List<Position> parsePositions(InputStream in) throws IOException {
+        List<Position> out = new ArrayList<>();
+        try (JsonParser p = FACTORY.createParser(in)) {
+            JsonToken first = p.nextToken();
+            if (first == JsonToken.START_ARRAY) {
+                while (p.nextToken() == JsonToken.START_OBJECT) out.add(readPosition(p));
+            } else if (first == JsonToken.START_OBJECT) {
+                out.add(readPosition(p));
+            }
+        }
+        return out;
+    }
+
+    private static Position readPosition(JsonParser p) throws IOException {
+        String id = null, pair = "";
+        double activePos = 0, avgPrice = 0, lockedMargin = 0, tp = 0, sl = 0;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String k = p.currentName();
+            JsonToken tok = p.nextToken();
+            switch (k) {
+                case "id":                  id = tok == JsonToken.VALUE_NULL ? null : p.getValueAsString(); break;
+                case "pair":                pair = tok == JsonToken.VALUE_NULL ? "" : p.getValueAsString(""); break;
+                case "active_pos":          activePos = num(p); break;
+                case "avg_price":           avgPrice = num(p); break;
+                case "locked_margin":       lockedMargin = num(p); break;
+                case "take_profit_trigger": tp = num(p); break;
+                case "stop_loss_trigger":   sl = num(p); break;
+                default:                    p.skipChildren(); break;
+            }
+        }
+        return new Position(id, pair, activePos, avgPrice, lockedMargin, tp, sl);
+    }
+
+    private static double num(JsonParser p) throws IOException {
+        switch (p.currentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return p.getDoubleValue();
+            case VALUE_STRING:
+                try {
+                    return Double.parseDouble(p.getText().trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            default:
+                p.skipChildren();
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+// =============================================================================
+// HMAC-SHA256 request signer (lowercase hex output, as the exchange expects).
+//
+// The old sign() did Mac.getInstance() + init() on EVERY authenticated call
+// (provider lookup + key schedule) and then hex-encoded with
+// String.format("%02x") per byte. Here each thread gets one Mac, initialised
+// once with the key — doFinal() resets it for the next payload — and the
+// digest is hex-encoded through a lookup table into a single char[].
+//
+// Mac is not thread-safe, hence ThreadLocal rather than one shared instance:
+// the parallel scan workers and the main thread can all sign concurrently.
+// =============================================================================
+final class HmacSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(this::newMac);
+
+    HmacSigner(String secret) {
+        // A missing secret only fails when something is actually signed,
+        // same as before.
+        this.key = secret == null ? null
+                : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    String sign(String payload) {
+        return hex(mac.get().doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String hex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            out[j++] = HEX[b >>> 4];
+            out[j++] = HEX[b & 0x0f];
+        }
+        return new String(out);
+    }
+
+    private Mac newMac() {
+        if (key == null) throw new IllegalStateException("API secret not set");
+        try {
+            Mac m = Mac.getInstance(ALGORITHM);
+            m.init(key);
+            return m;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " unavailable", e);
+        }
+    }
+}
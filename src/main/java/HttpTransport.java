@@ -0,0 +1,275 @@
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// =============================================================================
+// Shared REST transport. Every exchange call (public market data, instrument
+// metadata, authenticated positions/orders) goes through ONE OkHttpClient
+// connection pool, so keep-alive connections and TLS sessions are reused
+// across the thousands of calls a scan makes instead of paying a fresh
+// handshake per request like the old per-call HttpURLConnection did.
+//
+// HTTP/2 is negotiated via ALPN where the server offers it (falls back to
+// HTTP/1.1 otherwise). Response bodies are always fully read and closed,
+// which is what lets OkHttp hand the connection back to the pool.
+//
+// Timeouts are per endpoint class rather than a blanket 10s: bulk candle
+// fetches fail fast, order writes are given a bit more room.
+//
+// Every call first waits for a token from RequestScheduler (rates, burst and
+// priority lane are also per endpoint class, below). A 429 is fed back to
+// the scheduler and the call is retried, up to MAX_429_RETRIES times, once
+// the endpoint's pause is over. A POST's body and headers are rebuilt for
+// every attempt, so a signed retry carries a fresh timestamp and signature
+// rather than replaying one the exchange may already consider stale.
+// =============================================================================
+final class HttpTransport {
+
+    enum Endpoint {
+        //                  connect  read    call (ms) | start  max (req/s) burst  target latency (ms)  lane
+        MARKET_DATA       ( 5_000,  10_000, 15_000,     25,    60,         20,    2_000,               0),
+        REFERENCE_DATA    (10_000,  15_000, 30_000,     10,    30,         20,    3_000,               1),
+        PRIVATE_POSITIONS ( 5_000,  10_000, 15_000,      5,    15,          5,    2_000,               2),
+        PRIVATE_ORDERS    ( 5_000,  15_000, 20_000,      5,    15,          5,    3_000,               3);
+
+        final long   connectMs, readMs, callMs;
+        final double ratePerSec, maxRatePerSec, burst;
+        final long   targetLatencyMs;
+        final int    lane; // higher goes first when the shared rate is the limit
+
+        Endpoint(long connectMs, long readMs, long callMs, double ratePerSec, double maxRatePerSec,
+                 double burst, long targetLatencyMs, int lane) {
+            this.connectMs       = connectMs;
+            this.readMs          = readMs;
+            this.callMs          = callMs;
+            this.ratePerSec      = ratePerSec;
+            this.maxRatePerSec   = maxRatePerSec;
+            this.burst           = burst;
+            this.targetLatencyMs = targetLatencyMs;
+            this.lane            = lane;
+        }
+    }
+
+    static final class HttpResult {
+        final int    code;
+        final String body;
+
+        HttpResult(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+
+    // Consumes a response body straight off the socket (see ExchangeJson).
+    // Whatever the reader leaves unread is drained afterwards so the
+    // connection can still go back to the pool.
+    interface BodyReader<T> {
+        T read(int code, InputStream body) throws IOException;
+    }
+
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private static final int  POOL_MAX_IDLE       = 32;
+    private static final int  MAX_429_RETRIES     = 2;
+    private static final long POOL_KEEP_ALIVE_MIN = 5;
+
+    private static final ConnectionPool POOL =
+            new ConnectionPool(POOL_MAX_IDLE, POOL_KEEP_ALIVE_MIN, TimeUnit.MINUTES);
+
+    private static final AtomicLong callCount    = new AtomicLong();
+    private static final AtomicLong connectCount = new AtomicLong();
+    private static final AtomicLong failureCount = new AtomicLong();
+    private static final AtomicLong throttledCount = new AtomicLong();
+    private static final AtomicLong totalNanos   = new AtomicLong();
+
+    private static final RequestScheduler SCHEDULER = new RequestScheduler();
+
+    private static final OkHttpClient BASE = new OkHttpClient.Builder()
+            .connectionPool(POOL)
+            .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .retryOnConnectionFailure(true)
+            .eventListener(new EventListener() {
+                @Override
+                public void connectStart(Call call, InetSocketAddress addr, Proxy proxy) {
+                    connectCount.incrementAndGet();
+                }
+            })
+            .build();
+
+    // One client per endpoint class. newBuilder() shares the pool, dispatcher
+    // and listener with BASE — only the timeouts differ.
+    private static final Map<Endpoint, OkHttpClient> CLIENTS = new EnumMap<>(Endpoint.class);
+    static {
+        for (Endpoint ep : Endpoint.values()) {
+            CLIENTS.put(ep, BASE.newBuilder()
+                    .connectTimeout(ep.connectMs, TimeUnit.MILLISECONDS)
+                    .readTimeout(ep.readMs, TimeUnit.MILLISECONDS)
+                    .writeTimeout(ep.readMs, TimeUnit.MILLISECONDS)
+                    .callTimeout(ep.callMs, TimeUnit.MILLISECONDS)
+                    .build());
+        }
+    }
+
+    // Long-lived stream sockets (MarketStream): same pool and dispatcher, but
+    // no read/call timeout. Instead OkHttp pings every STREAM_PING_MS and
+    // fails the socket (-> MarketStream reconnects) if a pong doesn't come
+    // back before the next ping, so a half-open connection can't linger.
+    private static final long STREAM_PING_MS = 5_000L;
+    private static final OkHttpClient STREAM = BASE.newBuilder()
+            .connectTimeout(10_000, TimeUnit.MILLISECONDS)
+            .readTimeout(0, TimeUnit.MILLISECONDS)
+            .callTimeout(0, TimeUnit.MILLISECONDS)
+            .pingInterval(STREAM_PING_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    private HttpTransport() {}
+
+    static WebSocket openWebSocket(String url, WebSocketListener listener) {
+        return STREAM.newWebSocket(new Request.Builder().url(url).build(), listener);
+    }
+
+    static HttpResult get(String url, Endpoint ep) throws IOException {
+        Request req = new Request.Builder().url(url).get().build();
+        return execute(() -> req, ep);
+    }
+
+    static <T> T get(String url, Endpoint ep, BodyReader<T> reader) throws IOException {
+        Request req = new Request.Builder().url(url).get().build();
+        return execute(() -> req, ep, reader);
+    }
+
+    // json is asked for once per attempt and headers computed from what it
+    // returned, so a caller that stamps and signs its payload gets a fresh
+    // stamp and signature on a 429 retry.
+    static HttpResult postJson(String url, Supplier<String> json,
+                               Function<String, Map<String, String>> headers, Endpoint ep) throws IOException {
+        return execute(() -> postRequest(url, json, headers), ep);
+    }
+
+    static <T> T postJson(String url, Supplier<String> json, Function<String, Map<String, String>> headers,
+                          Endpoint ep, BodyReader<T> reader) throws IOException {
+        return execute(() -> postRequest(url, json, headers), ep, reader);
+    }
+
+    private static Request postRequest(String url, Supplier<String> json,
+                                       Function<String, Map<String, String>> headers) {
+        String body = json.get();
+        // byte[] body so OkHttp keeps Content-Type exactly "application/json"
+        // (the String overload appends "; charset=utf-8").
+        Request.Builder b = new Request.Builder().url(url)
+                .post(RequestBody.create(body.getBytes(StandardCharsets.UTF_8), JSON));
+        for (Map.Entry<String, String> h : headers.apply(body).entrySet()) b.header(h.getKey(), h.getValue());
+        return b.build();
+    }
+
+    private static HttpResult execute(Supplier<Request> req, Endpoint ep) throws IOException {
+        return execute(req, ep, (code, in) -> new HttpResult(code,
+                new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+    }
+
+    // req is built per attempt, after the rate-limit wait, so whatever it
+    // stamps is as fresh as the send.
+    private static <T> T execute(Supplier<Request> req, Endpoint ep, BodyReader<T> reader) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                SCHEDULER.acquire(ep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted waiting for " + ep + " rate limit", e);
+            }
+            long t0 = System.nanoTime();
+            callCount.incrementAndGet();
+            try (Response resp = CLIENTS.get(ep).newCall(req.get()).execute()) {
+                SCHEDULER.onResponse(ep, resp.code(), System.nanoTime() - t0, retryAfterSec(resp));
+                if (resp.code() == 429 && attempt < MAX_429_RETRIES) {
+                    throttledCount.incrementAndGet();
+                    continue; // the scheduler holds the next attempt until the pause is over
+                }
+                ResponseBody body = resp.body();
+                if (body == null) return reader.read(resp.code(), InputStream.nullInputStream());
+                InputStream in = body.byteStream();
+                T result = reader.read(resp.code(), in);
+                drain(in);
+                return result;
+            } catch (IOException e) {
+                failureCount.incrementAndGet();
+                throw e;
+            } finally {
+                totalNanos.addAndGet(System.nanoTime() - t0);
+            }
+        }
+    }
+
+    private static long retryAfterSec(Response resp) {
+        String h = resp.header("Retry-After");
+        if (h == null) return 0;
+        try {
+            return Long.parseLong(h.trim());
+        } catch (NumberFormatException e) {
+            return 0; // HTTP-date form: use the default pause
+        }
+    }
+
+    private static void drain(InputStream in) {
+        try {
+            byte[] skip = new byte[512];
+            while (in.read(skip) != -1) { /* discard */ }
+        } catch (IOException ignored) {
+            // Connection just won't be reused — nothing else to do.
+        }
+    }
+
+    // One-line pool/usage summary for the scan log. "reuse" is the share of
+    // calls that did NOT need a new TCP/TLS connection.
+    static String stats() {
+        long calls    = callCount.get();
+        long connects = connectCount.get();
+        double reuse  = calls == 0 ? 0 : 100.0 * Math.max(0, calls - connects) / calls;
+        double avgMs  = calls == 0 ? 0 : totalNanos.get() / 1e6 / calls;
+        return String.format("pool=%d conns (%d idle) | calls=%d | new connects=%d | reuse=%.1f%% | failures=%d | 429 retries=%d | avg=%.1fms",
+                POOL.connectionCount(), POOL.idleConnectionCount(), calls, connects, reuse,
+                failureCount.get(), throttledCount.get(), avgMs);
+    }
+
+    // Requests made from the calling thread from now on skip the rate
+    // limiter's queue (see RequestScheduler). For protective writes only.
+    static void markCurrentThreadUrgent() {
+        RequestScheduler.markCurrentThreadUrgent();
+    }
+
+    static boolean isCurrentThreadUrgent() {
+        return RequestScheduler.isCurrentThreadUrgent();
+    }
+
+    // Carries an urgent caller's priority onto a pool thread.
+    static Runnable urgent(Runnable task) {
+        return RequestScheduler.urgent(task);
+    }
+
+    // Current adaptive rate, 429s and queueing delay per endpoint class.
+    static String rateStats() {
+        return SCHEDULER.stats();
+    }
+}
@@ -0,0 +1,148 @@
+// =============================================================================
+// Streaming indicator state for ONE (pair, timeframe) series: EMA fast/mid,
+// ATR (Wilder) and Supertrend direction + bands, all advanced in O(1) per
+// closed candle via update().
+//
+// The recurrences (seeding included) are exactly the ones in calcEMA,
+// calcATR, calcATRSeries, calcSupertrend and calcSupertrendBands — feeding
+// bars 0..n-1 through update() gives the same values as running those
+// functions over the same n-bar array, and Supertrend is only walked once
+// (the batch path walked it twice: once for the series, once for the bands).
+//
+// The live scan seeds a state once and then keeps feeding it, where the old
+// code restarted from the start of each fetch window. The two agree on the
+// seeding window only; after that the state depends on how long the process
+// has been up. On a 60-bar window the old EMA21 still gave its SMA seed about
+// (1-2/22)^39 = 2.4% weight, and Supertrend's direction and ratcheted bands
+// depend on the whole price path, so they can differ indefinitely. The
+// caller compares against a freshly seeded state now and then (driftsFrom)
+// and re-seeds when they disagree.
+// =============================================================================
+final class IndicatorState {
+
+    private final int    emaFastPeriod, emaMidPeriod, atrPeriod, stPeriod;
+    private final double stMultiplier;
+    private final double kFast, kMid;
+
+    private int    n;           // bars consumed so far
+    private long   lastTime;    // open time (ms) of the last consumed bar
+    private double prevClose;
+
+    private double fastSum, emaFast;
+    private double midSum,  emaMid;
+    private double atrSum,  atr;
+    private double stAtrSum, stAtr;
+    private double upperBand, lowerBand;
+    private boolean stBullish = true;
+
+    private int checkedAt;      // n when last compared to a freshly seeded state
+
+    IndicatorState(int emaFastPeriod, int emaMidPeriod, int atrPeriod, int stPeriod, double stMultiplier) {
+        this.emaFastPeriod = emaFastPeriod;
+        this.emaMidPeriod  = emaMidPeriod;
+        this.atrPeriod     = atrPeriod;
+        this.stPeriod      = stPeriod;
+        this.stMultiplier  = stMultiplier;
+        this.kFast = 2.0 / (emaFastPeriod + 1);
+        this.kMid  = 2.0 / (emaMidPeriod + 1);
+    }
+
+    private IndicatorState(IndicatorState s) {
+        this(s.emaFastPeriod, s.emaMidPeriod, s.atrPeriod, s.stPeriod, s.stMultiplier);
+        n = s.n;
+        lastTime = s.lastTime;
+        prevClose = s.prevClose;
+        fastSum = s.fastSum;   emaFast = s.emaFast;
+        midSum = s.midSum;     emaMid = s.emaMid;
+        atrSum = s.atrSum;     atr = s.atr;
+        stAtrSum = s.stAtrSum; stAtr = s.stAtr;
+        upperBand = s.upperBand;
+        lowerBand = s.lowerBand;
+        stBullish = s.stBullish;
+        checkedAt = s.checkedAt;
+    }
+
+    // A copy to read from while the original keeps being advanced.
+    IndicatorState copy() {
+        return new IndicatorState(this);
+    }
+
+    void update(long timeMs, double high, double low, double close) {
+        double tr = n == 0
+                ? high - low
+                : Math.max(high - low, Math.max(Math.abs(high - prevClose), Math.abs(low - prevClose)));
+
+        if (n < emaFastPeriod) {
+            fastSum += close;
+            if (n == emaFastPeriod - 1) emaFast = fastSum / emaFastPeriod;
+        } else {
+            emaFast = close * kFast + emaFast * (1 - kFast);
+        }
+
+        if (n < emaMidPeriod) {
+            midSum += close;
+            if (n == emaMidPeriod - 1) emaMid = midSum / emaMidPeriod;
+        } else {
+            emaMid = close * kMid + emaMid * (1 - kMid);
+        }
+
+        if (n < atrPeriod) {
+            atrSum += tr;
+            if (n == atrPeriod - 1) atr = atrSum / atrPeriod;
+        } else {
+            atr = (atr * (atrPeriod - 1) + tr) / atrPeriod;
+        }
+
+        if (n < stPeriod) {
+            stAtrSum += tr;
+            if (n == stPeriod - 1) stAtr = stAtrSum / stPeriod;
+        } else {
+            stAtr = (stAtr * (stPeriod - 1) + tr) / stPeriod;
+            double hl2        = (high + low) / 2.0;
+            double basicUpper = hl2 + stMultiplier * stAtr;
+            double basicLower = hl2 - stMultiplier * stAtr;
+            if (n == stPeriod) {
+                upperBand = basicUpper;
+                lowerBand = basicLower;
+                stBullish = close > hl2;
+            } else {
+                upperBand = (basicUpper < upperBand || prevClose > upperBand) ? basicUpper : upperBand;
+                lowerBand = (basicLower > lowerBand || prevClose < lowerBand) ? basicLower : lowerBand;
+                stBullish = stBullish ? close >= lowerBand : close > upperBand;
+            }
+        }
+
+        prevClose = close;
+        lastTime  = timeMs;
+        n++;
+    }
+
+    // true if this state's trend verdict or any value is off from what a
+    // state seeded on the current window (fresh) reads by more than
+    // tolerance, relative.
+    boolean driftsFrom(IndicatorState fresh, double tolerance) {
+        return stBullish() != fresh.stBullish()
+                || off(emaFast(), fresh.emaFast(), tolerance) || off(emaMid(), fresh.emaMid(), tolerance)
+                || off(atr(), fresh.atr(), tolerance)
+                || off(stLower(), fresh.stLower(), tolerance) || off(stUpper(), fresh.stUpper(), tolerance);
+    }
+
+    private static boolean off(double a, double b, double tolerance) {
+        return Math.abs(a - b) > tolerance * Math.max(Math.abs(a), Math.abs(b));
+    }
+
+    int  barsSinceCheck() { return n - checkedAt; }
+    void markChecked()    { checkedAt = n; }
+
+    int    count()     { return n; }
+    long   lastTime()  { return lastTime; }
+    double lastClose() { return prevClose; }
+
+    // Same "not enough data" fallbacks as the batch functions.
+    double emaFast()   { return n < emaFastPeriod ? 0 : emaFast; }
+    double emaMid()    { return n < emaMidPeriod  ? 0 : emaMid; }
+    double atr()       { return n < atrPeriod + 1 ? 0 : atr; }
+    boolean stBullish() { return n < stPeriod + 1 || stBullish; }
+    double stLower()   { return n < stPeriod + 1 ? prevClose * 0.97 : lowerBand; }
+    double stUpper()   { return n < stPeriod + 1 ? prevClose * 1.03 : upperBand; }
+}
@@ -0,0 +1,274 @@
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// Instrument metadata (tick size etc.) for the pairs we trade, replacing the
+// serial one-GET-per-active-instrument refresh that ran inside getTickSize.
+//
+//   - Startup: the on-disk snapshot (instrument_cache.json) is served at
+//     once; only without one does startup wait for a fetch.
+//   - Fetch: active_instruments, then one GET per TRADED pair that is
+//     active, all in flight together (HttpTransport's rate limiter shapes
+//     them). A pair whose GET fails keeps its previous entry.
+//   - Refresh: once the data is older than ttlMs, the next read kicks off a
+//     background refresh and keeps reading the current map. The new map
+//     replaces it in one volatile write, then goes to the snapshot
+//     (tmp file + atomic rename).
+//   - A pair outside the traded list (e.g. a manual position we protect) is
+//     fetched on first use and included in later refreshes.
+//
+// Readers resolve a pair's id once (id(pair)) and then index table(): the
+// typed InstrumentTable rebuilt on every swap, with the same ids. The JSON
+// map is only kept to merge refreshes and write the snapshot.
+// =============================================================================
+final class InstrumentCache {
+
+    interface Source {
+        List<String> activePairs() throws IOException;
+        JSONObject instrument(String pair) throws IOException;
+    }
+
+    private static final int  FETCH_THREADS   = 16;
+    private static final long FAILED_RETRY_MS = 60_000L;
+
+    private final Source source;
+    private final List<String> idOrder = new ArrayList<>(); // guarded by swapLock; append-only
+    private final Set<String>  idAssigned = new HashSet<>();
+    private final Set<String> integerQtyPairs;
+    private final Set<String> wanted = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> missingSince = new ConcurrentHashMap<>();
+    private final Path file;
+    private final long ttlMs;
+
+    private final Object refreshLock = new Object();
+    private final Object swapLock    = new Object();
+    private volatile Map<String, JSONObject> current = Collections.emptyMap();
+    private volatile InstrumentTable table;
+    private volatile long loadedAt; // 0 = nothing loaded yet
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final ExecutorService fetchers = Executors.newFixedThreadPool(FETCH_THREADS, r -> {
+        Thread t = new Thread(r, "instrument-fetch");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "instrument-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong refreshes    = new AtomicLong();
+    private final AtomicLong fetchFailed  = new AtomicLong();
+    private volatile long    lastRefreshMs;
+    private volatile boolean fromSnapshot;
+
+    InstrumentCache(Source source, String[] pairs, Set<String> integerQtyPairs, Path file, long ttlMs) {
+        this.source = source;
+        this.integerQtyPairs = integerQtyPairs;
+        for (String p : pairs) if (idAssigned.add(p)) idOrder.add(p);
+        this.table = InstrumentTable.build(idOrder, current, integerQtyPairs);
+        Collections.addAll(wanted, pairs);
+        this.file  = file;
+        this.ttlMs = ttlMs;
+    }
+
+    // Snapshot if there is one (refreshed in the background if old),
+    // otherwise a blocking fetch.
+    synchronized void bootstrap() {
+        if (loadedAt > 0) return;
+        if (loadSnapshot()) {
+            if (System.currentTimeMillis() - loadedAt > ttlMs) refreshAsync();
+            return;
+        }
+        refresh();
+    }
+
+    // The pair's id, fetching its metadata first if the table doesn't have
+    // it. Stable for the process; NONE if the pair has no id.
+    int id(String pair) {
+        InstrumentTable t = table();
+        int id = t.id(pair);
+        if (!t.known(id) && fetchMissing(pair)) id = table.id(pair);
+        return id;
+    }
+
+    // The current table (kicks off a refresh once it is stale).
+    InstrumentTable table() {
+        if (loadedAt == 0) bootstrap();
+        else if (System.currentTimeMillis() - loadedAt > ttlMs) refreshAsync();
+        return table;
+    }
+
+    void refreshAsync() {
+        if (!refreshing.compareAndSet(false, true)) return;
+        refresher.execute(() -> {
+            try {
+                refresh();
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    String stats() {
+        long age = loadedAt == 0 ? 0 : (System.currentTimeMillis() - loadedAt) / 1000;
+        return String.format("pairs=%d | age=%ds%s | refreshes=%d (last %.1fs) | failed fetches=%d",
+                table.knownCount(), age, fromSnapshot ? " (snapshot)" : "", refreshes.get(), lastRefreshMs / 1000.0,
+                fetchFailed.get());
+    }
+
+    // =========================================================================
+    // Fetch
+    // =========================================================================
+    private void refresh() {
+        synchronized (refreshLock) {
+            refreshLocked();
+        }
+    }
+
+    private void refreshLocked() {
+        long t0 = System.currentTimeMillis();
+        try {
+            Set<String> active = new HashSet<>(source.activePairs());
+            List<String> pairs = new ArrayList<>();
+            for (String p : wanted) if (active.contains(p)) pairs.add(p);
+
+            Map<String, CompletableFuture<JSONObject>> inFlight = new HashMap<>();
+            for (String p : pairs) inFlight.put(p, CompletableFuture.supplyAsync(() -> fetch(p), fetchers));
+
+            Map<String, JSONObject> old = current;
+            Map<String, JSONObject> next = new HashMap<>(pairs.size() * 2);
+            int failed = 0;
+            for (Map.Entry<String, CompletableFuture<JSONObject>> e : inFlight.entrySet()) {
+                JSONObject d = e.getValue().join();
+                if (d == null) {
+                    failed++;
+                    d = old.get(e.getKey());
+                }
+                if (d != null) next.put(e.getKey(), d);
+            }
+            if (next.isEmpty()) {
+                System.err.println("[INSTRUMENTS] refresh got no instruments — keeping " + old.size());
+                retryLater();
+                return;
+            }
+            synchronized (swapLock) {
+                // Keep pairs fetchMissing() added while this refresh ran.
+                for (Map.Entry<String, JSONObject> e : current.entrySet()) {
+                    if (!old.containsKey(e.getKey())) next.putIfAbsent(e.getKey(), e.getValue());
+                }
+                swap(next);
+            }
+            loadedAt = System.currentTimeMillis();
+            fromSnapshot = false;
+            refreshes.incrementAndGet();
+            lastRefreshMs = loadedAt - t0;
+            System.out.printf("[INSTRUMENTS] Cached %d of %d traded pairs in %.1fs (%d failed)%n",
+                    next.size(), wanted.size(), lastRefreshMs / 1000.0, failed);
+            saveSnapshot(next);
+        } catch (Exception e) {
+            System.err.println("[INSTRUMENTS] refresh failed, keeping current cache: " + e.getMessage());
+            retryLater();
+        }
+    }
+
+    // Next try in FAILED_RETRY_MS instead of on every read.
+    private void retryLater() {
+        loadedAt = Math.max(loadedAt, System.currentTimeMillis() - ttlMs + FAILED_RETRY_MS);
+    }
+
+    private JSONObject fetch(String pair) {
+        try {
+            return source.instrument(pair);
+        } catch (Exception e) {
+            fetchFailed.incrementAndGet();
+            System.err.println("[INSTRUMENTS] " + pair + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean fetchMissing(String pair) {
+        Long since = missingSince.get(pair);
+        if (since != null && System.currentTimeMillis() - since < ttlMs) return false;
+        missingSince.put(pair, System.currentTimeMillis());
+        JSONObject d = fetch(pair);
+        if (d == null) return false;
+        synchronized (swapLock) {
+            Map<String, JSONObject> next = new HashMap<>(current);
+            next.put(pair, d);
+            swap(next);
+        }
+        wanted.add(pair);
+        missingSince.remove(pair);
+        return true;
+    }
+
+    // Callers hold swapLock. Readers see the new table in one volatile write.
+    // Pairs new to the cache get the next ids; existing ids never move.
+    private void swap(Map<String, JSONObject> next) {
+        List<String> added = new ArrayList<>();
+        for (String p : next.keySet()) if (!idAssigned.contains(p)) added.add(p);
+        Collections.sort(added);
+        idAssigned.addAll(added);
+        idOrder.addAll(added);
+        table = InstrumentTable.build(idOrder, next, integerQtyPairs);
+        current = Collections.unmodifiableMap(next);
+    }
+
+    // =========================================================================
+    // Snapshot
+    // =========================================================================
+    private boolean loadSnapshot() {
+        try {
+            if (!Files.exists(file)) return false;
+            JSONObject root = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            JSONObject inst = root.getJSONObject("instruments");
+            Map<String, JSONObject> m = new HashMap<>(inst.length() * 2);
+            for (String pair : inst.keySet()) m.put(pair, inst.getJSONObject(pair));
+            if (m.isEmpty()) return false;
+            synchronized (swapLock) {
+                swap(m);
+            }
+            loadedAt = root.getLong("savedAt");
+            fromSnapshot = true;
+            System.out.println("[INSTRUMENTS] Loaded " + m.size() + " instruments from " + file
+                    + " (" + (System.currentTimeMillis() - loadedAt) / 1000 + "s old)");
+            return true;
+        } catch (Exception e) {
+            System.err.println("[INSTRUMENTS] snapshot unreadable, fetching instead: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void saveSnapshot(Map<String, JSONObject> m) {
+        try {
+            JSONObject root = new JSONObject();
+            root.put("savedAt", loadedAt);
+            root.put("instruments", new JSONObject(m));
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, root.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            System.err.println("[INSTRUMENTS] saving snapshot failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// =============================================================================
+// Immutable, typed view of the instrument metadata. Each pair gets a dense
+// int id — the traded pairs first, in COINS_TO_TRADE order, then extra
+// pairs in the order the cache first saw them. InstrumentCache hands every
+// new table the same order (only ever appended to), so an id stays valid
+// for the life of the process: callers resolve it once per pair and index
+// whichever table is current. Every field lives in a primitive array
+// indexed by that id:
+//
+//   tick                               price_increment as a TickMath.Tick
+//                                      (size + exact units * 10^-scale)
+//   qtyFactor / qtyUnits               quantity_increment the same way:
+//                                      step = qtyUnits / qtyFactor, so
+//                                      floorQty() is one multiply, floor
+//                                      and divide (0.01 -> 100 / 1,
+//                                      1 -> 1 / 1, 0.5 -> 10 / 5)
+//   minNotional, maxLeverage           0 = not given
+//   integerQty                         the step is whole contracts
+//
+// Without a quantity_increment the step falls back to the old rule: whole
+// contracts for the integer-qty pairs, else two decimals. A pair with no
+// metadata (fetch failed / unknown) still has an id if it is traded, with
+// known=false and the old defaults (tick 0.0001). id() of a
+// pair not in the table is NONE; every getter accepts NONE and returns the
+// default. InstrumentCache builds a new table on every swap.
+// =============================================================================
+final class InstrumentTable {
+
+    static final int NONE = -1;
+
+    static final double DEFAULT_TICK = 0.0001;
+    private static final TickMath.Tick DEFAULT = TickMath.Tick.of(DEFAULT_TICK);
+    private static final TickMath.Tick WHOLE   = TickMath.Tick.of(1);
+    private static final TickMath.Tick DEFAULT_QTY_STEP = TickMath.Tick.of(0.01);
+
+    private final Map<String, Integer> ids;
+    private final String[]  pairs;
+    private final boolean[] known;
+    private final TickMath.Tick[] tick;
+    private final double[]  qtyFactor;
+    private final long[]    qtyUnits;
+    private final double[]  minNotional;
+    private final int[]     maxLeverage;
+    private final boolean[] integerQty;
+
+    private InstrumentTable(List<String> order) {
+        int n = order.size();
+        ids         = new HashMap<>(n * 2);
+        pairs       = order.toArray(new String[0]);
+        known       = new boolean[n];
+        tick        = new TickMath.Tick[n];
+        qtyFactor   = new double[n];
+        qtyUnits    = new long[n];
+        minNotional = new double[n];
+        maxLeverage = new int[n];
+        integerQty  = new boolean[n];
+        for (int i = 0; i < n; i++) ids.put(pairs[i], i);
+    }
+
+    // order: every pair that gets an id, in id order (a superset of
+    // meta's keys).
+    static InstrumentTable build(List<String> order, Map<String, JSONObject> meta, Set<String> integerQtyPairs) {
+        InstrumentTable t = new InstrumentTable(order);
+        for (int i = 0; i < t.pairs.length; i++) {
+            String pair = t.pairs[i];
+            JSONObject d = meta.get(pair);
+            t.known[i] = d != null;
+            double size = d != null ? d.optDouble("price_increment", DEFAULT_TICK) : DEFAULT_TICK;
+            t.tick[i] = size > 0 ? TickMath.Tick.of(size) : DEFAULT;
+
+            TickMath.Tick step = TickMath.Tick.of(d != null ? d.optDouble("quantity_increment", 0) : 0);
+            if (step == TickMath.Tick.NONE) {
+                step = integerQtyPairs.contains(pair) ? WHOLE : DEFAULT_QTY_STEP;
+            }
+            t.qtyFactor[i]  = Math.pow(10, step.scale);
+            t.qtyUnits[i]   = step.units;
+            t.integerQty[i] = step.units % (long) t.qtyFactor[i] == 0;
+            if (d != null) {
+                t.minNotional[i] = d.optDouble("min_notional", 0);
+                t.maxLeverage[i] = d.optInt("max_leverage_long", d.optInt("max_leverage", 0));
+            }
+        }
+        return t;
+    }
+
+    int id(String pair) {
+        Integer i = ids.get(pair);
+        return i == null ? NONE : i;
+    }
+
+    int size()              { return pairs.length; }
+    String pair(int id)     { return pairs[id]; }
+    boolean known(int id)   { return id != NONE && known[id]; }
+
+    TickMath.Tick tick(int id) { return id == NONE ? DEFAULT : tick[id]; }
+    double minNotional(int id) { return id == NONE ? 0 : minNotional[id]; }
+    int    maxLeverage(int id) { return id == NONE ? 0 : maxLeverage[id]; }
+    boolean integerQty(int id) { return id != NONE && integerQty[id]; }
+
+    // qty floored to a multiple of the pair's quantity step.
+    double floorQty(int id, double qty) {
+        double f = id == NONE ? 100 : qtyFactor[id];
+        long   u = id == NONE ? 1 : qtyUnits[id];
+        return Math.floor(qty * f / u) * u / f;
+    }
+
+    int knownCount() {
+        int n = 0;
+        for (boolean k : known) if (k) n++;
+        return n;
+    }
+}
@@ -0,0 +1,277 @@
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// =============================================================================
+// Streaming market data: one socket.io connection (Engine.IO v4 over an
+// OkHttp WebSocket) to the CoinDCX stream, joined to "<pair>@trades-futures"
+// for every traded pair. Each trade updates the pair's last price (Quote)
+// and is handed to the TradeListener (the trail engine). Candles still come
+// from REST.
+//
+// Quotes live in an AtomicReferenceArray of immutable values indexed by the
+// pair's position in the traded list. The socket's reader thread is the only
+// writer, readers never lock — lastPrice() is an array read.
+//
+// A quote is only served while the stream is healthy: connected, some frame
+// seen within staleMs, and the quote itself received on the CURRENT
+// connection (trades missed while reconnecting are unknown). In every other
+// case lastPrice() returns 0 and the caller falls back to REST. Engine.IO's
+// own ping comes only every pingInterval (25s by default), so it can't keep
+// a shorter staleMs fresh — with every traded pair joined, trades do.
+//
+// A connection is replaced (retried with backoff, 1s doubling to 30s) when
+//   - it closes or fails;
+//   - a WebSocket ping goes unanswered (HttpTransport's stream client pings
+//     every few seconds) — this catches a half-open socket;
+//   - nothing arrives for the server's pingInterval + pingTimeout (the
+//     Engine.IO rule), checked by a watchdog every WATCHDOG_MS.
+// Only one replacement is ever pending, and only the socket connect() last
+// opened is adopted: any other that still opens is cancelled, so an old
+// connection can't stay subscribed in the background.
+//
+//   0{..}   open (pingInterval)      -> send 40 (namespace connect)
+//   40{..}  connected                -> send 42["join",{"channelName":..}] per pair
+//   2       ping                     -> send 3
+//   42["new-trade",{"data":..}]      -> p (price), s (pair), T (ms)
+// =============================================================================
+final class MarketStream {
+
+    interface TradeListener {
+        void onTrade(String pair, double price, long timeMs);
+    }
+
+    static final class Quote {
+        final double price;
+        final long   timeMs;      // exchange trade time
+        final long   receivedAt;
+
+        Quote(double price, long timeMs, long receivedAt) {
+            this.price = price;
+            this.timeMs = timeMs;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    private static final long RECONNECT_MIN_MS = 1_000L;
+    private static final long RECONNECT_MAX_MS = 30_000L;
+    private static final long WATCHDOG_MS      = 5_000L;
+    private static final long DEAD_AFTER_MS    = 45_000L; // Engine.IO defaults: 25s interval + 20s timeout
+
+    private final String   url;
+    private final String[] pairs;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final long staleMs;
+
+    private final AtomicReferenceArray<Quote> quotes;
+
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "market-stream");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile WebSocket     socket; // the one connect() last opened; set under this
+    private volatile boolean       running;
+    private volatile boolean       connected;
+    private volatile long          connectedAt;
+    private volatile long          lastFrameAt;
+    private volatile long          deadAfterMs = DEAD_AFTER_MS;
+    private volatile TradeListener listener;
+    private long    reconnectDelayMs = RECONNECT_MIN_MS; // guarded by this
+    private boolean reconnectPending;                    // guarded by this
+
+    private final AtomicLong trades     = new AtomicLong();
+    private final AtomicLong connects   = new AtomicLong();
+    private final AtomicLong hits       = new AtomicLong();
+    private final AtomicLong fallbacks  = new AtomicLong();
+
+    MarketStream(String url, String[] pairs, long staleMs) {
+        this.url     = url;
+        this.pairs   = pairs.clone();
+        this.staleMs = staleMs;
+        for (int i = 0; i < this.pairs.length; i++) index.put(this.pairs[i], i);
+        this.quotes = new AtomicReferenceArray<>(this.pairs.length);
+    }
+
+    void setListener(TradeListener listener) {
+        this.listener = listener;
+    }
+
+    synchronized void start() {
+        if (running) return;
+        running = true;
+        reconnector.scheduleWithFixedDelay(this::checkAlive, WATCHDOG_MS, WATCHDOG_MS, TimeUnit.MILLISECONDS);
+        connect();
+    }
+
+    synchronized void stop() {
+        running = false;
+        connected = false;
+        WebSocket ws = socket;
+        socket = null;
+        if (ws != null) ws.close(1000, "shutdown");
+        reconnector.shutdownNow();
+    }
+
+    boolean healthy() {
+        return connected && System.currentTimeMillis() - lastFrameAt <= staleMs;
+    }
+
+    // Last traded price from the stream, or 0 if the stream can't vouch for
+    // it right now (use REST).
+    double lastPrice(String pair) {
+        Quote q = quote(pair);
+        if (q == null) {
+            fallbacks.incrementAndGet();
+            return 0;
+        }
+        hits.incrementAndGet();
+        return q.price;
+    }
+
+    Quote quote(String pair) {
+        Integer i = index.get(pair);
+        if (i == null || !healthy()) return null;
+        Quote q = quotes.get(i);
+        return q != null && q.receivedAt >= connectedAt ? q : null;
+    }
+
+    String stats() {
+        return String.format("%s | connects=%d | trades=%d | price reads from stream=%d | REST fallbacks=%d",
+                healthy() ? "healthy" : (connected ? "stale" : "down"),
+                connects.get(), trades.get(), hits.get(), fallbacks.get());
+    }
+
+    // =========================================================================
+    // Connection
+    // =========================================================================
+    // Holds the lock while opening, so onOpen (which takes it too) always
+    // sees the new socket stored.
+    private synchronized void connect() {
+        reconnectPending = false;
+        if (!running) return;
+        lastFrameAt = System.currentTimeMillis(); // the handshake gets deadAfterMs too
+        socket = HttpTransport.openWebSocket(url + "/socket.io/?EIO=4&transport=websocket", new Listener());
+    }
+
+    // A socket that went quiet without closing: drop it and reconnect.
+    private void checkAlive() {
+        WebSocket ws = socket;
+        long quiet = System.currentTimeMillis() - lastFrameAt;
+        if (!running || ws == null || quiet <= deadAfterMs) return;
+        replace(ws, "no frame for " + quiet + "ms");
+    }
+
+    // Drops ws and schedules one connect(). A no-op unless ws is still the
+    // current socket, so a late close/failure of a socket that was already
+    // replaced can't start a second reconnect.
+    private synchronized void replace(WebSocket ws, String why) {
+        if (ws != socket) return;
+        socket = null; // the listener ignores the dropped socket's callbacks
+        connected = false;
+        ws.cancel();
+        if (!running || reconnectPending) return;
+        reconnectPending = true;
+        System.out.println("[STREAM] " + why + " — REST fallback, reconnecting in " + reconnectDelayMs + "ms");
+        reconnector.schedule(this::connect, reconnectDelayMs, TimeUnit.MILLISECONDS);
+        reconnectDelayMs = Math.min(reconnectDelayMs * 2, RECONNECT_MAX_MS);
+    }
+
+    private final class Listener extends WebSocketListener {
+        @Override
+        public void onOpen(WebSocket ws, Response response) {
+            synchronized (MarketStream.this) {
+                if (ws == socket) return;
+            }
+            ws.cancel(); // opened after it was replaced
+        }
+
+        @Override
+        public void onMessage(WebSocket ws, String text) {
+            if (ws != socket) return;
+            lastFrameAt = System.currentTimeMillis();
+            try {
+                if (text.startsWith("42")) {
+                    onEvent(new JSONArray(text.substring(2)));
+                } else if (text.equals("2")) {
+                    ws.send("3");
+                } else if (text.startsWith("40")) {
+                    onConnected(ws);
+                } else if (text.startsWith("0")) {
+                    ws.send("40");
+                    JSONObject open = new JSONObject(text.substring(1));
+                    deadAfterMs = open.optLong("pingInterval", 25_000L) + open.optLong("pingTimeout", 20_000L);
+                } else if (text.startsWith("41") || text.startsWith("1")) {
+                    ws.close(1000, "server disconnect");
+                }
+            } catch (RuntimeException e) {
+                System.err.println("MarketStream.onMessage: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket ws, int code, String reason) {
+            ws.close(1000, null);
+        }
+
+        @Override
+        public void onClosed(WebSocket ws, int code, String reason) {
+            replace(ws, "stream closed (" + code + ")");
+        }
+
+        @Override
+        public void onFailure(WebSocket ws, Throwable t, Response response) {
+            replace(ws, "stream failed: " + t.getMessage());
+        }
+    }
+
+    private void onConnected(WebSocket ws) {
+        for (String pair : pairs) {
+            ws.send("42" + new JSONArray().put("join")
+                    .put(new JSONObject().put("channelName", pair + "@trades-futures")));
+        }
+        synchronized (this) {
+            reconnectDelayMs = RECONNECT_MIN_MS;
+        }
+        connectedAt = System.currentTimeMillis();
+        connected = true;
+        connects.incrementAndGet();
+        System.out.println("[STREAM] Connected, joined " + pairs.length + " trade channels");
+    }
+
+    private void onEvent(JSONArray ev) {
+        if (!"new-trade".equals(ev.optString(0))) return;
+        Object payload = ev.opt(1);
+        if (payload instanceof JSONObject) {
+            Object data = ((JSONObject) payload).opt("data");
+            if (data instanceof String) data = new JSONObject((String) data);
+            if (data instanceof JSONObject) payload = data;
+        }
+        if (!(payload instanceof JSONObject)) return;
+        JSONObject t = (JSONObject) payload;
+
+        String pair = t.optString("s", null);
+        Integer i = pair == null ? null : index.get(pair);
+        double price = t.optDouble("p", 0);
+        if (i == null || price <= 0) return;
+        long now  = System.currentTimeMillis();
+        long time = t.optLong("T", now);
+
+        quotes.set(i, new Quote(price, time, now));
+        trades.incrementAndGet();
+
+        TradeListener l = listener;
+        if (l != null) l.onTrade(pair, price, time);
+    }
+}
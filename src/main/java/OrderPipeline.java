@@ -0,0 +1,223 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// Order lifecycle after placeFuturesOrder, as a chain of CompletableFutures
+// instead of sleep-polling on the scan thread:
+//
+//   PLACED -> FILLED (avg_price seen) -> POSITION_KNOWN (id) -> PROTECTED
+//                \________________________\___________________\-> FAILED
+//
+// Every wait is a timer.schedule() of the next probe, and every probe (one
+// positions read, or create_tpsl + its check) runs on the pipeline's io
+// pool — no thread ever sleeps, so any number of orders progress side by
+// side while the scan carries on. The attempt counts and delays are the
+// old loops' (getEntryPrice / getPositionId / setTpSlWithRetry), which are
+// now blocking wrappers over the same futures.
+// =============================================================================
+final class OrderPipeline {
+
+    interface Exchange {
+        Position position(String pair) throws Exception;
+        void setTpSl(String posId, double tp, double sl, String pair);
+    }
+
+    // [sl, tp] for a confirmed entry price.
+    interface Bracket {
+        double[] slTp(double entry);
+    }
+
+    enum Stage { PLACED, FILLED, POSITION_KNOWN, PROTECTED, FAILED }
+
+    static final class Order {
+        final String pair;
+        final String orderId;
+        final long   placedAt = System.currentTimeMillis();
+        volatile Stage  stage = Stage.PLACED;
+        volatile double entry, sl, tp;
+        volatile String posId;
+
+        Order(String pair, String orderId) {
+            this.pair    = pair;
+            this.orderId = orderId;
+        }
+    }
+
+    private static final int IO_THREADS = 4;
+
+    private final Exchange exchange;
+    private final int  entryChecks, posIdRetries, tpslRetries;
+    private final long entryDelayMs, posIdDelayMs, tpslDelayMs;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "order-timer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService io = Executors.newFixedThreadPool(IO_THREADS, r -> {
+        Thread t = new Thread(r, "order-io");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicInteger inFlight   = new AtomicInteger();
+    private final AtomicLong    tracked    = new AtomicLong();
+    private final AtomicLong    protectedN = new AtomicLong();
+    private final AtomicLong    failed     = new AtomicLong();
+    private final AtomicLong    totalMs    = new AtomicLong();
+
+    OrderPipeline(Exchange exchange,
+                  int entryChecks, long entryDelayMs,
+                  int posIdRetries, long posIdDelayMs,
+                  int tpslRetries, long tpslDelayMs) {
+        this.exchange     = exchange;
+        this.entryChecks  = entryChecks;
+        this.entryDelayMs = entryDelayMs;
+        this.posIdRetries = posIdRetries;
+        this.posIdDelayMs = posIdDelayMs;
+        this.tpslRetries  = tpslRetries;
+        this.tpslDelayMs  = tpslDelayMs;
+    }
+
+    // Runs a placed order through fill, position id and TP/SL. Completes
+    // with the Order in PROTECTED or FAILED (never exceptionally).
+    CompletableFuture<Order> track(String pair, String orderId, Bracket bracket) {
+        Order o = new Order(pair, orderId);
+        tracked.incrementAndGet();
+        inFlight.incrementAndGet();
+        return entry(pair).thenCompose(entry -> {
+            if (entry <= 0) {
+                System.out.println("[ORDER] " + pair + " — could not confirm entry within window");
+                return done(o, Stage.FAILED);
+            }
+            o.entry = entry;
+            o.stage = Stage.FILLED;
+            System.out.printf("[ORDER] %s entry confirmed: %.6f%n", pair, entry);
+            double[] slTp = bracket.slTp(entry);
+            o.sl = slTp[0];
+            o.tp = slTp[1];
+            return positionId(pair).thenCompose(posId -> {
+                if (posId == null) {
+                    System.out.println("[ORDER] " + pair + " — position ID not found after retries");
+                    return done(o, Stage.FAILED);
+                }
+                o.posId = posId;
+                o.stage = Stage.POSITION_KNOWN;
+                return confirmTpSl(posId, o.tp, o.sl, pair)
+                        .thenCompose(ok -> done(o, ok ? Stage.PROTECTED : Stage.FAILED));
+            });
+        }).exceptionally(e -> {
+            System.err.println("[ORDER] " + pair + ": " + e.getMessage());
+            o.stage = Stage.FAILED;
+            failed.incrementAndGet();
+            inFlight.decrementAndGet();
+            return o;
+        });
+    }
+
+    private CompletableFuture<Order> done(Order o, Stage stage) {
+        o.stage = stage;
+        if (stage == Stage.PROTECTED) {
+            protectedN.incrementAndGet();
+            totalMs.addAndGet(System.currentTimeMillis() - o.placedAt);
+        } else {
+            failed.incrementAndGet();
+        }
+        inFlight.decrementAndGet();
+        return CompletableFuture.completedFuture(o);
+    }
+
+    // Fill price, or 0 if none seen within the entry window.
+    CompletableFuture<Double> entry(String pair) {
+        return poll(() -> {
+            Position p = exchange.position(pair);
+            return p != null && p.avgPrice() > 0 ? p.avgPrice() : null;
+        }, entryChecks, entryDelayMs, true, "entry").thenApply(v -> v == null ? 0.0 : v);
+    }
+
+    // Position id, or null after the retries.
+    CompletableFuture<String> positionId(String pair) {
+        return poll(() -> {
+            Position p = exchange.position(pair);
+            return p != null ? p.id() : null;
+        }, posIdRetries, posIdDelayMs, false, "positionId");
+    }
+
+    // create_tpsl, then check it landed tpslDelayMs later; up to tpslRetries
+    // times. true once the position shows both triggers. Called from an
+    // urgent thread (the ProtectionWorker), the write and its checks stay
+    // urgent on the io pool.
+    CompletableFuture<Boolean> confirmTpSl(String posId, double tp, double sl, String pair) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        tpslAttempt(posId, tp, sl, pair, 1, HttpTransport.isCurrentThreadUrgent(), result);
+        return result;
+    }
+
+    private void tpslAttempt(String posId, double tp, double sl, String pair, int attempt, boolean urgent,
+                             CompletableFuture<Boolean> result) {
+        onIo(urgent, () -> {
+            exchange.setTpSl(posId, tp, sl, pair);
+            timer.schedule(() -> onIo(urgent, () -> {
+                try {
+                    Position p = exchange.position(pair);
+                    if (p != null && p.takeProfitTrigger() > 0 && p.stopLossTrigger() > 0) {
+                        System.out.println("  TP/SL confirmed set on attempt " + attempt + " for " + pair);
+                        result.complete(true);
+                        return;
+                    }
+                } catch (Exception ignored) {}
+                if (attempt < tpslRetries) {
+                    System.out.println("  TP/SL not confirmed yet (attempt " + attempt + "/" + tpslRetries + ") for " + pair + " — retrying...");
+                    tpslAttempt(posId, tp, sl, pair, attempt + 1, urgent, result);
+                } else {
+                    System.out.println("  WARNING: TP/SL could not be confirmed after " + tpslRetries + " attempts for " + pair
+                            + " — the protection worker will retry");
+                    result.complete(false);
+                }
+            }), tpslDelayMs, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void onIo(boolean urgent, Runnable task) {
+        io.execute(urgent ? HttpTransport.urgent(task) : task);
+    }
+
+    // Runs probe up to attempts times, delayMs apart (delayFirst: also
+    // before the first), until it returns non-null. Completes with null if
+    // it never does; a throwing probe counts as "not yet".
+    private <T> CompletableFuture<T> poll(Callable<T> probe, int attempts, long delayMs, boolean delayFirst,
+                                          String what) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable[] step = new Runnable[1];
+        AtomicInteger attempt = new AtomicInteger();
+        step[0] = () -> io.execute(() -> {
+            int n = attempt.incrementAndGet();
+            try {
+                T v = probe.call();
+                if (v != null) {
+                    result.complete(v);
+                    return;
+                }
+            } catch (Exception e) {
+                System.err.println(what + " attempt " + n + ": " + e.getMessage());
+            }
+            if (n >= attempts) result.complete(null);
+            else timer.schedule(step[0], delayMs, TimeUnit.MILLISECONDS);
+        });
+        if (delayFirst) timer.schedule(step[0], delayMs, TimeUnit.MILLISECONDS);
+        else step[0].run();
+        return result;
+    }
+
+    String stats() {
+        long ok = protectedN.get();
+        return String.format("in flight=%d | tracked=%d | protected=%d | failed=%d | avg placed->protected=%.1fs",
+                inFlight.get(), tracked.get(), ok, failed.get(), ok == 0 ? 0.0 : totalMs.get() / 1000.0 / ok);
+    }
+}
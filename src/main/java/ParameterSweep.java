@@ -0,0 +1,297 @@
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+// =============================================================================
+// Parameter sweep over the strategy constants (StrategyParams), replayed by
+// Backtester over the candle archive.
+//
+// Every value list below is crossed into a grid; --sample N instead draws N
+// distinct points of that grid at random (--seed for repeatability).
+//
+// Candles are read from the archive once per pair and kept for the whole
+// sweep. Parameter sets are then grouped by indicatorKey() (EMA/Supertrend
+// settings): per group, one ForkJoinPool pass builds each pair's
+// Backtester.Tape (all the indicator work), and a second pass replays every
+// pullback/SL/swing/RR variant of the group against those cached tapes,
+// which is only the cheap per-signal part. Tapes are dropped before the next
+// group, so memory is one group's tapes on top of the candles.
+//
+// Each set is scored like Backtester (MAX_OPEN_POSITIONS cap included) and
+// the table is ranked by --rank (total | pf | avgr | dd).
+//
+//   java -cp target/short-order-bot-1.0-SNAPSHOT-jar-with-dependencies.jar ParameterSweep \
+//        [--days 365] [--pairs B-ETH_USDT,...] [--threads N] [--sample N] [--seed S]
+//        [--ema-fast 7,9,12] [--ema-mid 21,26] [--st-period 10] [--st-mult 2.5,3]
+//        [--pullback 0.4,0.6,0.8] [--sl-buffer 0.3] [--swing 20] [--rr 0.6,1,1.5]
+//        [--rank total] [--min-trades 30] [--top 25]
+//
+// Unset lists default to the live value, so the grid always contains the
+// live configuration (marked * in the table).
+// =============================================================================
+final class ParameterSweep {
+
+    private static final long DAY       = 24 * 60 * 60_000L;
+    private static final long WARMUP_MS = 30 * DAY;
+
+    static final class Result {
+        final StrategyParams params;
+        final int    trades;
+        final double winRate, avgR, totalPct, profitFactor, maxDrawdownPct;
+
+        Result(StrategyParams params, List<Backtester.Trade> trades) {
+            Backtester.Metrics m = new Backtester.Metrics(trades);
+            this.params         = params;
+            this.trades         = m.trades;
+            this.winRate        = m.winRate;
+            this.avgR           = m.avgR;
+            this.totalPct       = m.totalPct;
+            this.profitFactor   = m.profitFactor;
+            this.maxDrawdownPct = m.maxDrawdownPct;
+        }
+    }
+
+    // One pair's archived candles, loaded once.
+    private static final class PairData {
+        final String pair;
+        final CandleSeries h1, m30, m15;
+
+        PairData(String pair, CandleSeries h1, CandleSeries m30, CandleSeries m15) {
+            this.pair = pair;
+            this.h1 = h1;
+            this.m30 = m30;
+            this.m15 = m15;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final List<PairData> data;
+    private final long fromMs;
+
+    ParameterSweep(ForkJoinPool pool, List<PairData> data, long fromMs) {
+        this.pool = pool;
+        this.data = data;
+        this.fromMs = fromMs;
+    }
+
+    // =========================================================================
+    // Sweep
+    // =========================================================================
+    List<Result> run(List<StrategyParams> grid) throws InterruptedException {
+        Map<String, List<StrategyParams>> groups = new LinkedHashMap<>();
+        for (StrategyParams p : grid) groups.computeIfAbsent(p.indicatorKey(), k -> new ArrayList<>()).add(p);
+
+        List<Result> results = new ArrayList<>(grid.size());
+        int g = 0;
+        for (List<StrategyParams> group : groups.values()) {
+            long t0 = System.nanoTime();
+            StrategyParams ind = group.get(0);
+
+            List<Callable<Backtester.Tape>> tapeJobs = new ArrayList<>(data.size());
+            for (PairData d : data) tapeJobs.add(() -> Backtester.tape(d.h1, d.m30, d.m15, ind));
+            List<Backtester.Tape> tapes = collect(pool.invokeAll(tapeJobs));
+
+            List<Callable<Result>> replayJobs = new ArrayList<>(group.size());
+            for (StrategyParams p : group) replayJobs.add(() -> evaluate(p, tapes));
+            results.addAll(collect(pool.invokeAll(replayJobs)));
+
+            System.out.printf("[SWEEP] group %d/%d %s: %d sets in %.2fs%n", ++g, groups.size(),
+                    ind.indicatorKey(), group.size(), (System.nanoTime() - t0) / 1e9);
+        }
+        return results;
+    }
+
+    private Result evaluate(StrategyParams p, List<Backtester.Tape> tapes) {
+        List<Backtester.Trade> all = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+            PairData d = data.get(i);
+            all.addAll(Backtester.replay(d.pair, tapes.get(i), d.h1, d.m15, fromMs, 0, p));
+        }
+        all.sort(Comparator.comparingLong((Backtester.Trade t) -> t.entryTime).thenComparing(t -> t.pair));
+        return new Result(p, Backtester.applyPositionCap(all, false));
+    }
+
+    private static <T> List<T> collect(List<Future<T>> futures) throws InterruptedException {
+        List<T> out = new ArrayList<>(futures.size());
+        for (Future<T> f : futures) {
+            try {
+                out.add(f.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("sweep task failed", e.getCause());
+            }
+        }
+        return out;
+    }
+
+    static List<PairData> load(CandleArchive archive, List<String> pairs, long fromMs, long toMs) {
+        List<PairData> out = new ArrayList<>();
+        for (String pair : pairs) {
+            CandleSeries h1  = archive.read(pair, "60", fromMs - WARMUP_MS, toMs);
+            CandleSeries m30 = archive.read(pair, "30", fromMs - WARMUP_MS, toMs);
+            CandleSeries m15 = archive.read(pair, "15", fromMs - WARMUP_MS, toMs);
+            if (h1 == null || m30 == null || m15 == null) {
+                System.out.println("[SWEEP] " + pair + ": not archived, skipped");
+                continue;
+            }
+            out.add(new PairData(pair, h1, m30, m15));
+        }
+        return out;
+    }
+
+    // =========================================================================
+    // Grid
+    // =========================================================================
+    static List<StrategyParams> grid(int[] emaFast, int[] emaMid, int[] stPeriod, double[] stMult,
+                                     double[] pullback, double[] slBuffer, int[] swing, double[] rr) {
+        List<StrategyParams> out = new ArrayList<>();
+        for (int ef : emaFast)
+            for (int em : emaMid)
+                for (int sp : stPeriod)
+                    for (double sm : stMult)
+                        for (double pb : pullback)
+                            for (double sb : slBuffer)
+                                for (int sw : swing)
+                                    for (double r : rr) {
+                                        if (ef >= em) continue; // fast EMA must be the faster one
+                                        out.add(new StrategyParams(ef, em, sp, sm, pb, sb, sw, r));
+                                    }
+        return out;
+    }
+
+    // n distinct grid points, keeping the live set if it was in the grid.
+    static List<StrategyParams> sample(List<StrategyParams> grid, int n, long seed) {
+        if (n >= grid.size()) return grid;
+        List<StrategyParams> shuffled = new ArrayList<>(grid);
+        Collections.shuffle(shuffled, new Random(seed));
+        List<StrategyParams> out = new ArrayList<>(shuffled.subList(0, n));
+        for (StrategyParams p : grid) {
+            if (isLive(p) && !out.contains(p)) {
+                out.set(n - 1, p);
+                break;
+            }
+        }
+        return out;
+    }
+
+    static boolean isLive(StrategyParams p) {
+        StrategyParams l = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.LIVE_PARAMS;
+        return p.emaFast == l.emaFast && p.emaMid == l.emaMid && p.stPeriod == l.stPeriod
+                && p.stMultiplier == l.stMultiplier && p.pullbackMaxAtr == l.pullbackMaxAtr
+                && p.slAtrBuffer == l.slAtrBuffer && p.swingLookback == l.swingLookback && p.rrTarget == l.rrTarget;
+    }
+
+    static Comparator<Result> ranking(String by) {
+        switch (by) {
+            case "total": return Comparator.comparingDouble((Result r) -> r.totalPct).reversed();
+            case "pf":    return Comparator.comparingDouble((Result r) -> r.profitFactor).reversed();
+            case "avgr":  return Comparator.comparingDouble((Result r) -> r.avgR).reversed();
+            case "dd":    return Comparator.comparingDouble((Result r) -> r.maxDrawdownPct);
+            default: throw new IllegalArgumentException("unknown --rank " + by + " (total | pf | avgr | dd)");
+        }
+    }
+
+    static String table(List<Result> ranked, int top) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%4s  %9s %6s %6s %7s %7s %6s   %s%n",
+                "#", "total%", "PF", "win%", "avgR", "maxDD%", "trades", "params"));
+        for (int i = 0; i < Math.min(top, ranked.size()); i++) {
+            Result r = ranked.get(i);
+            sb.append(String.format("%4d  %9.2f %6.2f %6.1f %7.3f %7.2f %6d %s %s%n",
+                    i + 1, r.totalPct, r.profitFactor, r.winRate, r.avgR, r.maxDrawdownPct, r.trades,
+                    isLive(r.params) ? "*" : " ", r.params));
+        }
+        return sb.toString();
+    }
+
+    // =========================================================================
+    // CLI
+    // =========================================================================
+    public static void main(String[] args) throws Exception {
+        StrategyParams live = CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.LIVE_PARAMS;
+        int days = 365, top = 25, sample = 0, minTrades = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 42;
+        String rank = "total";
+        List<String> pairs = Arrays.asList(CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.COINS_TO_TRADE);
+        int[]    emaFast  = {live.emaFast},  emaMid = {live.emaMid}, stPeriod = {live.stPeriod},
+                 swing    = {live.swingLookback};
+        double[] stMult   = {live.stMultiplier}, pullback = {live.pullbackMaxAtr},
+                 slBuffer = {live.slAtrBuffer},  rr       = {live.rrTarget};
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--days":       days      = Integer.parseInt(args[++i]); break;
+                case "--top":        top       = Integer.parseInt(args[++i]); break;
+                case "--threads":    threads   = Integer.parseInt(args[++i]); break;
+                case "--sample":     sample    = Integer.parseInt(args[++i]); break;
+                case "--seed":       seed      = Long.parseLong(args[++i]); break;
+                case "--min-trades": minTrades = Integer.parseInt(args[++i]); break;
+                case "--rank":       rank      = args[++i]; break;
+                case "--pairs":      pairs     = Arrays.asList(args[++i].split(",")); break;
+                case "--ema-fast":   emaFast   = ints(args[++i]); break;
+                case "--ema-mid":    emaMid    = ints(args[++i]); break;
+                case "--st-period":  stPeriod  = ints(args[++i]); break;
+                case "--st-mult":    stMult    = doubles(args[++i]); break;
+                case "--pullback":   pullback  = doubles(args[++i]); break;
+                case "--sl-buffer":  slBuffer  = doubles(args[++i]); break;
+                case "--swing":      swing     = ints(args[++i]); break;
+                case "--rr":         rr        = doubles(args[++i]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        Comparator<Result> order = ranking(rank);
+
+        List<StrategyParams> grid = grid(emaFast, emaMid, stPeriod, stMult, pullback, slBuffer, swing, rr);
+        if (sample > 0) grid = sample(grid, sample, seed);
+        if (grid.isEmpty()) {
+            System.out.println("[SWEEP] empty grid (every --ema-fast >= --ema-mid?)");
+            return;
+        }
+
+        CandleArchive archive = new CandleArchive(Paths.get(CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.setting(
+                "candles.archiveDir", "CANDLE_ARCHIVE_DIR", "candle_archive")));
+        long toMs   = System.currentTimeMillis();
+        long fromMs = toMs - days * DAY;
+
+        long t0 = System.nanoTime();
+        List<PairData> data = load(archive, pairs, fromMs, toMs);
+        System.out.printf("[SWEEP] %d sets x %d pairs, %d days, %d threads (candles loaded in %.2fs)%n",
+                grid.size(), data.size(), days, threads, (System.nanoTime() - t0) / 1e9);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Result> results;
+        try {
+            results = new ParameterSweep(pool, data, fromMs).run(grid);
+        } finally {
+            pool.shutdown();
+        }
+
+        final int min = minTrades;
+        List<Result> ranked = results.stream()
+                .filter(r -> r.trades >= min)
+                .sorted(order)
+                .collect(Collectors.toList());
+        System.out.printf("%n=== Sweep: %d sets, %.2fs, ranked by %s ===%n", results.size(),
+                (System.nanoTime() - t0) / 1e9, rank);
+        System.out.print(table(ranked, top));
+    }
+
+    private static int[] ints(String csv) {
+        return Arrays.stream(csv.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    }
+
+    private static double[] doubles(String csv) {
+        return Arrays.stream(csv.split(",")).mapToDouble(s -> Double.parseDouble(s.trim())).toArray();
+    }
+}
@@ -0,0 +1,11 @@
+// Compact view of one /futures/positions entry — only the fields the bot
+// actually reads. Missing / null numeric fields are 0, a missing id is null
+// (same defaults the old optDouble/optString lookups used).
+record Position(String id,
+                String pair,
+                double activePos,
+                double avgPrice,
+                double lockedMargin,
+                double takeProfitTrigger,
+                double stopLossTrigger) {
+}
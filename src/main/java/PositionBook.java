@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// Positions snapshot service. The whole /futures/positions list is fetched
+// ONCE, indexed by pair, and served to every consumer (findPosition,
+// getActivePositions, the safety sweep, the fill/TP-SL confirmation polls)
+// for a short TTL — instead of each of them POSTing the full list again just
+// to pick one pair out of it.
+//
+// The TTL is deliberately shorter than the shortest confirmation poll
+// interval (ENTRY_CHECK_DELAY_MS), so polling loops still see a fresh list
+// on every attempt. Anything that changes positions on the exchange (order
+// placement, create_tpsl) calls invalidate() so the next read refetches.
+// invalidate() also bumps a generation that every snapshot is stamped with
+// when its fetch starts: a fetch that was already in flight (and so may
+// predate the write) is returned to its caller but never served again.
+// =============================================================================
+final class PositionBook {
+
+    interface Source {
+        List<Position> fetch() throws IOException;
+    }
+
+    static final class Snapshot {
+        final long                  fetchedAt;
+        final long                  generation;
+        final List<Position>        all;
+        final Map<String, Position> byPair;
+
+        Snapshot(long fetchedAt, long generation, List<Position> all) {
+            this.fetchedAt  = fetchedAt;
+            this.generation = generation;
+            this.all       = Collections.unmodifiableList(all);
+            Map<String, Position> idx = new HashMap<>(all.size() * 2);
+            // First entry wins, same as the old linear scan in findPosition.
+            for (Position p : all) idx.putIfAbsent(p.pair(), p);
+            this.byPair = Collections.unmodifiableMap(idx);
+        }
+    }
+
+    private final Source source;
+    private final long   ttlMs;
+    private volatile Snapshot current;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong hits    = new AtomicLong();
+    private final AtomicLong stale   = new AtomicLong();
+
+    PositionBook(Source source, long ttlMs) {
+        this.source = source;
+        this.ttlMs  = ttlMs;
+    }
+
+    Snapshot snapshot() throws IOException {
+        Snapshot s = current;
+        if (servable(s)) {
+            hits.incrementAndGet();
+            return s;
+        }
+        synchronized (this) {
+            // Another thread may have refreshed while we waited for the lock.
+            s = current;
+            if (servable(s)) {
+                hits.incrementAndGet();
+                return s;
+            }
+            long gen = generation.get();
+            s = new Snapshot(System.currentTimeMillis(), gen, source.fetch());
+            fetches.incrementAndGet();
+            if (generation.get() == gen) current = s;
+            else stale.incrementAndGet();
+            return s;
+        }
+    }
+
+    // Fresh, and fetched entirely after the last invalidate().
+    private boolean servable(Snapshot s) {
+        return s != null && s.generation == generation.get() && System.currentTimeMillis() - s.fetchedAt < ttlMs;
+    }
+
+    Position find(String pair) throws IOException {
+        return snapshot().byPair.get(pair);
+    }
+
+    void invalidate() {
+        generation.incrementAndGet();
+        current = null;
+    }
+
+    String stats() {
+        Snapshot s = current;
+        return String.format("fetches=%d | served from snapshot=%d | discarded stale=%d | last size=%d",
+                fetches.get(), hits.get(), stale.get(), s == null ? 0 : s.all.size());
+    }
+}
@@ -0,0 +1,169 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// Protective TP/SL writes, off the scan. A position found without
+// take_profit_trigger / stop_loss_trigger is queued here and protected by
+// dedicated threads within seconds — instead of waiting for the end-of-scan
+// sweep behind every candle fetch of the scan.
+//
+// Sources of work:
+//   - submit(pair): the order flow when it couldn't confirm entry / TP/SL,
+//     and the end-of-scan sweep;
+//   - a detector poll every detectMs over the positions snapshot, so a
+//     position opened or stripped of TP/SL outside the scan is caught too.
+//
+// A pair is in the queue at most once. While the order flow owns a fresh
+// order (hold .. release) the worker leaves that pair alone and looks again
+// a second later. A failed attempt is retried with backoff (2s doubling to
+// 30s) until the protector reports the pair protected or gone.
+//
+// The worker threads are marked urgent for HttpTransport: their requests
+// pre-empt the scan's queued requests in the rate limiter.
+// =============================================================================
+final class ProtectionWorker {
+
+    interface Protector {
+        // true = protected, or nothing to protect (closed / not filled yet);
+        // false = try again later.
+        boolean protect(String pair) throws Exception;
+    }
+
+    interface Detector {
+        List<String> unprotected() throws Exception;
+    }
+
+    private static final int  THREADS        = 2;
+    private static final long HELD_RECHECK_MS = 1_000L;
+    private static final long RETRY_MIN_MS    = 2_000L;
+    private static final long RETRY_MAX_MS    = 30_000L;
+
+    private final Protector protector;
+    private final Detector  detector;
+
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final Set<String>       pending   = ConcurrentHashMap.newKeySet(); // queued, waiting or in progress
+    private final Set<String>       held      = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> queuedAt  = new ConcurrentHashMap<>();
+    private final Map<String, Long> retryMs   = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "protection-timer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService workers = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread t = new Thread(r, "protection");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong submitted  = new AtomicLong();
+    private final AtomicLong detected   = new AtomicLong();
+    private final AtomicLong protectedN = new AtomicLong();
+    private final AtomicLong retries    = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    ProtectionWorker(Protector protector, Detector detector) {
+        this.protector = protector;
+        this.detector  = detector;
+    }
+
+    void start(long detectMs) {
+        for (int i = 0; i < THREADS; i++) workers.execute(this::drain);
+        timer.scheduleWithFixedDelay(this::detect, detectMs, detectMs, TimeUnit.MILLISECONDS);
+        System.out.println("[PROTECT] Worker started (" + THREADS + " threads, detector every " + detectMs + "ms)");
+    }
+
+    void stop() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    // Queue a pair for protection. false if it is already pending.
+    boolean submit(String pair) {
+        if (!pending.add(pair)) return false;
+        queuedAt.put(pair, System.currentTimeMillis());
+        submitted.incrementAndGet();
+        queue.add(pair);
+        return true;
+    }
+
+    // The order flow is placing / confirming an order for this pair.
+    void hold(String pair) {
+        held.add(pair);
+    }
+
+    void release(String pair) {
+        held.remove(pair);
+    }
+
+    String stats() {
+        return String.format("pending=%d | submitted=%d (detector %d) | protected=%d | retries=%d | max queue->protected=%dms",
+                pending.size(), submitted.get(), detected.get(), protectedN.get(), retries.get(), maxLatency.get());
+    }
+
+    // =========================================================================
+    // Worker threads
+    // =========================================================================
+    private void drain() {
+        HttpTransport.markCurrentThreadUrgent();
+        while (!Thread.currentThread().isInterrupted()) {
+            String pair;
+            try {
+                pair = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (held.contains(pair)) {
+                requeue(pair, HELD_RECHECK_MS);
+                continue;
+            }
+            boolean done;
+            try {
+                done = protector.protect(pair);
+            } catch (Exception e) {
+                System.err.println("[PROTECT] " + pair + ": " + e.getMessage());
+                done = false;
+            }
+            if (done) {
+                Long since = queuedAt.remove(pair);
+                if (since != null) maxLatency.accumulateAndGet(System.currentTimeMillis() - since, Math::max);
+                retryMs.remove(pair);
+                protectedN.incrementAndGet();
+                pending.remove(pair);
+            } else {
+                long delay = retryMs.merge(pair, RETRY_MIN_MS, (old, min) -> Math.min(old * 2, RETRY_MAX_MS));
+                retries.incrementAndGet();
+                System.out.println("[PROTECT] " + pair + " — not protected yet, retrying in " + delay + "ms");
+                requeue(pair, delay);
+            }
+        }
+    }
+
+    private void requeue(String pair, long delayMs) {
+        timer.schedule(() -> queue.add(pair), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void detect() {
+        try {
+            for (String pair : detector.unprotected()) {
+                if (held.contains(pair) || !submit(pair)) continue;
+                detected.incrementAndGet();
+                System.out.println("[PROTECT] " + pair + " has no TP/SL — queued");
+            }
+        } catch (Exception e) {
+            System.err.println("[PROTECT] detector: " + e.getMessage());
+        }
+    }
+}
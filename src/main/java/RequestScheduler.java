@@ -0,0 +1,235 @@
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// =============================================================================
+// Client-side rate limiting for HttpTransport. Every request takes one token
+// from its endpoint class's bucket AND one from a shared bucket (the
+// exchange limits per IP/key as well as per route), waiting if either is
+// empty.
+//
+// Priority lanes: when the shared bucket is the bottleneck, a request only
+// takes a shared token if no higher-lane request is waiting that could go
+// right now (its own bucket has a token). So order and TP/SL writes jump
+// ahead of a queue of bulk candle fetches instead of waiting behind it.
+//
+// Each endpoint's rate adapts (AIMD):
+//   - 429             -> rate -30%, bucket paused for Retry-After (or 1s);
+//                        the 429s of one burst (inside one pause) cut once
+//   - latency EWMA over the endpoint's target -> rate -10% (at most 1x/s)
+//   - otherwise, every success adds a small step, up to the endpoint's max
+//
+// Threads marked urgent (markCurrentThreadUrgent — the ProtectionWorker)
+// pre-empt everything: they take their tokens on credit without queueing,
+// and only wait out a 429 pause. The debt is paid by whoever comes next.
+// =============================================================================
+final class RequestScheduler {
+
+    private static final double SHARED_RATE  = 80.0;  // req/s across all endpoints
+    private static final double SHARED_BURST = 40.0;
+
+    private static final double INCREASE_STEP     = 0.2;  // req/s per successful call
+    private static final double DECREASE_ON_429   = 0.7;
+    private static final double DECREASE_ON_SLOW  = 0.9;
+    private static final long   SLOW_COOLDOWN_NS  = TimeUnit.SECONDS.toNanos(1);
+    private static final long   DEFAULT_PAUSE_MS  = 1_000L;
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+
+    private static final class Bucket {
+        final double minRate, maxRate, burst;
+        final long   targetLatencyNs;
+        double rate, tokens;
+        long   refilledAt, pausedUntil, lastSlowCut;
+        double latencyEwmaNs;
+        int    waiting;
+
+        Bucket(double rate, double minRate, double maxRate, double burst, long targetLatencyMs, long now) {
+            this.rate = rate;
+            this.minRate = minRate;
+            this.maxRate = maxRate;
+            this.burst = burst;
+            this.targetLatencyNs = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+            this.tokens = burst;
+            this.refilledAt = now;
+        }
+
+        void refill(long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * rate);
+                refilledAt = now;
+            }
+        }
+
+        boolean ready(long now) {
+            return now >= pausedUntil && tokens >= 1;
+        }
+
+        // Nanos until this bucket can hand out a token.
+        long waitNs(long now) {
+            long pause = Math.max(0, pausedUntil - now);
+            long refill = tokens >= 1 ? 0 : (long) ((1 - tokens) / rate * 1e9);
+            return Math.max(pause, refill);
+        }
+    }
+
+    private static final ThreadLocal<Boolean> URGENT = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<HttpTransport.Endpoint, Bucket> buckets = new EnumMap<>(HttpTransport.Endpoint.class);
+    private final Bucket shared;
+
+    private final Map<HttpTransport.Endpoint, AtomicLong> throttled = new EnumMap<>(HttpTransport.Endpoint.class);
+    private final Map<HttpTransport.Endpoint, AtomicLong> waitNanos = new EnumMap<>(HttpTransport.Endpoint.class);
+    private final Map<HttpTransport.Endpoint, AtomicLong> acquired  = new EnumMap<>(HttpTransport.Endpoint.class);
+    private final AtomicLong urgent = new AtomicLong();
+
+    RequestScheduler() {
+        long now = System.nanoTime();
+        for (HttpTransport.Endpoint ep : HttpTransport.Endpoint.values()) {
+            buckets.put(ep, new Bucket(ep.ratePerSec, ep.ratePerSec / 10, ep.maxRatePerSec, ep.burst,
+                    ep.targetLatencyMs, now));
+            throttled.put(ep, new AtomicLong());
+            waitNanos.put(ep, new AtomicLong());
+            acquired.put(ep, new AtomicLong());
+        }
+        // Fixed rate: it only ever gets refill(), never onResponse().
+        shared = new Bucket(SHARED_RATE, SHARED_RATE, SHARED_RATE, SHARED_BURST, Long.MAX_VALUE, now);
+    }
+
+    static void markCurrentThreadUrgent() {
+        URGENT.set(Boolean.TRUE);
+    }
+
+    static boolean isCurrentThreadUrgent() {
+        return URGENT.get();
+    }
+
+    // task, run as urgent on whichever thread executes it.
+    static Runnable urgent(Runnable task) {
+        return () -> {
+            boolean was = URGENT.get();
+            URGENT.set(Boolean.TRUE);
+            try {
+                task.run();
+            } finally {
+                URGENT.set(was);
+            }
+        };
+    }
+
+    void acquire(HttpTransport.Endpoint ep) throws InterruptedException {
+        if (URGENT.get()) {
+            acquireUrgent(ep);
+            return;
+        }
+        long t0 = System.nanoTime();
+        Bucket own = buckets.get(ep);
+        lock.lock();
+        own.waiting++;
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                own.refill(now);
+                shared.refill(now);
+                if (own.ready(now) && shared.ready(now) && !higherLaneReady(ep, now)) {
+                    own.tokens--;
+                    shared.tokens--;
+                    break;
+                }
+                long wait = Math.max(own.waitNs(now), shared.waitNs(now));
+                changed.awaitNanos(Math.max(wait, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        } finally {
+            own.waiting--;
+            changed.signalAll();
+            lock.unlock();
+        }
+        acquired.get(ep).incrementAndGet();
+        waitNanos.get(ep).addAndGet(System.nanoTime() - t0);
+    }
+
+    private void acquireUrgent(HttpTransport.Endpoint ep) throws InterruptedException {
+        long t0 = System.nanoTime();
+        Bucket own = buckets.get(ep);
+        lock.lock();
+        try {
+            long now;
+            while ((now = System.nanoTime()) < own.pausedUntil) changed.awaitNanos(own.pausedUntil - now);
+            own.refill(now);
+            shared.refill(now);
+            own.tokens--;
+            shared.tokens--;
+        } finally {
+            lock.unlock();
+        }
+        urgent.incrementAndGet();
+        acquired.get(ep).incrementAndGet();
+        waitNanos.get(ep).addAndGet(System.nanoTime() - t0);
+    }
+
+    // A waiter in a higher lane whose own bucket would let it go now.
+    private boolean higherLaneReady(HttpTransport.Endpoint ep, long now) {
+        for (Map.Entry<HttpTransport.Endpoint, Bucket> e : buckets.entrySet()) {
+            Bucket b = e.getValue();
+            if (e.getKey().lane > ep.lane && b.waiting > 0) {
+                b.refill(now);
+                if (b.ready(now)) return true;
+            }
+        }
+        return false;
+    }
+
+    // Feedback from a finished call. retryAfterSec <= 0 means "not given".
+    void onResponse(HttpTransport.Endpoint ep, int code, long latencyNs, long retryAfterSec) {
+        Bucket b = buckets.get(ep);
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (code == 429) {
+                throttled.get(ep).incrementAndGet();
+                if (now >= b.pausedUntil) b.rate = Math.max(b.minRate, b.rate * DECREASE_ON_429);
+                b.tokens = Math.min(b.tokens, 0);
+                long pauseMs = retryAfterSec > 0 ? retryAfterSec * 1000L : DEFAULT_PAUSE_MS;
+                b.pausedUntil = Math.max(b.pausedUntil, now + TimeUnit.MILLISECONDS.toNanos(pauseMs));
+                return;
+            }
+            b.latencyEwmaNs = b.latencyEwmaNs == 0 ? latencyNs
+                    : b.latencyEwmaNs + LATENCY_EWMA_ALPHA * (latencyNs - b.latencyEwmaNs);
+            if (b.latencyEwmaNs > b.targetLatencyNs) {
+                if (now - b.lastSlowCut >= SLOW_COOLDOWN_NS) {
+                    b.rate = Math.max(b.minRate, b.rate * DECREASE_ON_SLOW);
+                    b.lastSlowCut = now;
+                }
+            } else if (code < 500) {
+                b.rate = Math.min(b.maxRate, b.rate + INCREASE_STEP);
+            }
+        } finally {
+            changed.signalAll();
+            lock.unlock();
+        }
+    }
+
+    String stats() {
+        StringBuilder sb = new StringBuilder();
+        lock.lock();
+        try {
+            for (Map.Entry<HttpTransport.Endpoint, Bucket> e : buckets.entrySet()) {
+                HttpTransport.Endpoint ep = e.getKey();
+                long n = acquired.get(ep).get();
+                if (n == 0) continue;
+                if (sb.length() > 0) sb.append(" | ");
+                sb.append(String.format("%s %.1f/s (429s=%d, avg wait=%.1fms, lat=%.0fms)",
+                        ep, e.getValue().rate, throttled.get(ep).get(),
+                        waitNanos.get(ep).get() / 1e6 / n, e.getValue().latencyEwmaNs / 1e6));
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (urgent.get() > 0) sb.append(" | urgent=").append(urgent.get());
+        return sb.length() == 0 ? "no requests yet" : sb.toString();
+    }
+}
@@ -0,0 +1,47 @@
+// =============================================================================
+// The tunable strategy constants as one immutable value, so the backtester
+// and ParameterSweep can run the live rule code with other settings. The
+// live bot always uses LIVE_PARAMS, built from the static finals in the
+// trader class — those stay the single place the live values are set.
+//
+// Sets that agree on the indicator fields (EMA/Supertrend) produce the same
+// indicator series; indicatorKey() is what ParameterSweep groups them by.
+// =============================================================================
+final class StrategyParams {
+
+    final int    emaFast;
+    final int    emaMid;
+    final int    stPeriod;
+    final double stMultiplier;
+    final double pullbackMaxAtr;
+    final double slAtrBuffer;
+    final int    swingLookback;
+    final double rrTarget;
+
+    StrategyParams(int emaFast, int emaMid, int stPeriod, double stMultiplier,
+                   double pullbackMaxAtr, double slAtrBuffer, int swingLookback, double rrTarget) {
+        this.emaFast        = emaFast;
+        this.emaMid         = emaMid;
+        this.stPeriod       = stPeriod;
+        this.stMultiplier   = stMultiplier;
+        this.pullbackMaxAtr = pullbackMaxAtr;
+        this.slAtrBuffer    = slAtrBuffer;
+        this.swingLookback  = swingLookback;
+        this.rrTarget       = rrTarget;
+    }
+
+    // Minimum bars per trend timeframe / for the 15m series, as in
+    // analyzeTF and evaluatePair.
+    int minTfBars()  { return emaMid + stPeriod + 5; }
+    int min15mBars() { return emaMid + 5; }
+
+    String indicatorKey() {
+        return emaFast + "/" + emaMid + "/" + stPeriod + "/" + stMultiplier;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ema=%d/%d st=%d/%.2f pullback=%.2f slBuf=%.2f swing=%d rr=%.2f",
+                emaFast, emaMid, stPeriod, stMultiplier, pullbackMaxAtr, slAtrBuffer, swingLookback, rrTarget);
+    }
+}
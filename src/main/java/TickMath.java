@@ -0,0 +1,149 @@
+import org.json.JSONObject;
+import org.json.JSONString;
+
+import java.math.BigDecimal;
+
+// =============================================================================
+// Tick rounding in long arithmetic — the fast path behind roundToTick() and
+// the prices written into order / create_tpsl payloads. Same results as
+// roundToTickBD (HALF_UP to a multiple of the tick, at the tick's own
+// decimal scale), without its three BigDecimals and a division per call.
+//
+//   tick   -> (units, scale): the scaled long BigDecimal.valueOf(tick) is,
+//             e.g. 0.001 -> (1, 3), 0.0005 -> (50, 5), 1.0 -> (10, 1);
+//             worked out once per instrument (a Tick, kept by
+//             InstrumentTable), never per call
+//   price  -> q = price / tick; floor(q) + (frac > .5): the multiple
+//   result -> multiple * units at that scale: exact, as a double or as the
+//             decimal text org.json would have printed for the BigDecimal
+//
+// q carries a few ulps of error, so a price whose q lands within TIE_EPS of
+// x.5 (where that error could flip the rounding), a q too large for the
+// error bound, a result past 2^53 and any non-positive input all go through
+// roundToTickBD. TickMathTest checks both paths agree, value AND JSON text.
+// =============================================================================
+final class TickMath {
+
+    private static final double TIE_EPS = 1e-5;
+    private static final double MAX_Q   = 1e9;
+
+    private static final double[] POW10 = new double[19];
+    private static final long[]   LPOW10 = new long[19];
+    static {
+        double d = 1;
+        long l = 1;
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = d;
+            LPOW10[i] = l;
+            d *= 10;
+            l *= 10;
+        }
+    }
+
+    private TickMath() {}
+
+    // A tick size with its exact decimal form. NONE (size 0) = don't round.
+    static final class Tick {
+        static final Tick NONE = new Tick(0, 0, 0);
+
+        final double size;
+        final long   units;
+        final int    scale;
+
+        private Tick(double size, long units, int scale) {
+            this.size  = size;
+            this.units = units;
+            this.scale = scale;
+        }
+
+        // Same decimal (value AND scale) roundToTickBD sees for size.
+        static Tick of(double size) {
+            if (!(size > 0)) return NONE;
+            BigDecimal bd = BigDecimal.valueOf(size);
+            if (bd.scale() < 0) bd = bd.setScale(0);
+            return new Tick(size, bd.unscaledValue().longValueExact(), bd.scale());
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(size);
+        }
+    }
+
+    // An exactly rounded price: unscaled units at a decimal scale. Written
+    // into JSON as its plain decimal text.
+    static final class Price implements JSONString {
+        final long units;
+        final int  scale;
+
+        Price(long units, int scale) {
+            this.units = units;
+            this.scale = scale;
+        }
+
+        double doubleValue() {
+            return units / POW10[scale];
+        }
+
+        // org.json prints a BigDecimal as toString() with trailing zeros
+        // shaved; below 1e-6 toString() is scientific, so defer to it there.
+        @Override
+        public String toJSONString() {
+            if (digits(units) - 1 - scale < -6) return JSONObject.numberToString(BigDecimal.valueOf(units, scale));
+            long whole = units / LPOW10[scale];
+            long frac  = units % LPOW10[scale];
+            if (frac == 0) return Long.toString(whole);
+            int s = scale;
+            while (frac % 10 == 0) {
+                frac /= 10;
+                s--;
+            }
+            StringBuilder sb = new StringBuilder(24).append(whole).append('.');
+            for (int i = digits(frac); i < s; i++) sb.append('0');
+            return sb.append(frac).toString();
+        }
+
+        @Override
+        public String toString() {
+            return toJSONString();
+        }
+    }
+
+    static double round(double price, Tick tick) {
+        if (!(tick.size > 0)) return price;
+        Price p = roundFast(price, tick);
+        return p != null ? p.doubleValue()
+                : CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.roundToTickBD(price, tick.size).doubleValue();
+    }
+
+    // For a JSON payload: a Price, or roundToTickBD's BigDecimal when the
+    // fast path declines — org.json writes both as the same number.
+    static Object json(double price, Tick tick) {
+        Price p = roundFast(price, tick);
+        return p != null ? p : CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.roundToTickBD(price, tick.size);
+    }
+
+    // null = use roundToTickBD.
+    static Price roundFast(double price, Tick tick) {
+        if (!(price > 0) || tick.units <= 0 || tick.scale >= POW10.length) return null;
+        double q = price / tick.size;
+        if (q >= MAX_Q) return null;
+        double fl = Math.floor(q);
+        double frac = q - fl;
+        if (Math.abs(frac - 0.5) < TIE_EPS) return null;
+        long m = (long) fl + (frac > 0.5 ? 1 : 0);
+        if (tick.units >= MAX_Q) return null;
+        long result = m * tick.units; // < 1e18
+        // Beyond 2^53 the long->double step could round differently.
+        return result < (1L << 53) ? new Price(result, tick.scale) : null;
+    }
+
+    private static int digits(long v) {
+        int n = 1;
+        while (v >= 10) {
+            v /= 10;
+            n++;
+        }
+        return n;
+    }
+}
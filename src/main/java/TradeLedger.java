@@ -0,0 +1,252 @@
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// =============================================================================
+// Append-only trade ledger (trade_ledger.jsonl): every order the bot places,
+// one JSON line per event, fsynced before the call returns.
+//
+//   {"ev":"placed","ts":..,"id":..,"pair":..,"side":"buy","qty":..,"price":..}
+//   {"ev":"settled","ts":..,"id":..,"stage":"PROTECTED","entry":..,"sl":..,"tp":..}
+//
+// "settled" is written when the order pipeline finishes with the order
+// (PROTECTED, or FAILED with whatever it saw). On startup load() replays
+// the file into Trade records, which is what the entry-scan cooldown reads
+// (lastPlaced) — so COOLDOWN_MS survives a restart — and what the queries
+// answer from:
+//
+//   byPair(pair, from, to)   one pair's trades placed in [from, to)
+//   between(from, to)        all trades placed in [from, to)
+//
+// Both are a binary search over placedAt-ordered lists (per pair and
+// overall), then a copy of the slice. A torn last line from a crash is
+// cut off before the first new append.
+// =============================================================================
+final class TradeLedger {
+
+    static final class Trade {
+        final String orderId;
+        final String pair;
+        final String side;
+        final double qty;
+        final double price; // last price when placed
+        final long   placedAt;
+        volatile String stage = "PLACED";
+        volatile double entry, sl, tp;
+        volatile long   settledAt;
+
+        Trade(String orderId, String pair, String side, double qty, double price, long placedAt) {
+            this.orderId  = orderId;
+            this.pair     = pair;
+            this.side     = side;
+            this.qty      = qty;
+            this.price    = price;
+            this.placedAt = placedAt;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s qty=%s entry=%.6f SL=%.6f TP=%.6f %s",
+                    pair, side, orderId, qty, entry, sl, tp, stage);
+        }
+    }
+
+    private final Path file;
+
+    private final Object writeLock = new Object();
+    private FileChannel channel; // guarded by writeLock
+
+    // Indexes, appended to under writeLock; trades arrive in placedAt order.
+    private final List<Trade> all = new ArrayList<>();
+    private final Map<String, List<Trade>> byPair = new ConcurrentHashMap<>();
+    private final Map<String, Trade> byId = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastPlaced = new ConcurrentHashMap<>();
+
+    TradeLedger(Path file) {
+        this.file = file;
+    }
+
+    // =========================================================================
+    // Recording
+    // =========================================================================
+    void placed(String orderId, String pair, String side, double qty, double price) {
+        long now = System.currentTimeMillis();
+        synchronized (writeLock) {
+            index(new Trade(orderId, pair, side, qty, price, now));
+            append(new JSONObject().put("ev", "placed").put("ts", now).put("id", orderId).put("pair", pair)
+                    .put("side", side).put("qty", qty).put("price", price));
+        }
+    }
+
+    void settled(String orderId, String stage, double entry, double sl, double tp) {
+        long now = System.currentTimeMillis();
+        synchronized (writeLock) {
+            Trade t = byId.get(orderId);
+            if (t != null) settle(t, stage, entry, sl, tp, now);
+            append(new JSONObject().put("ev", "settled").put("ts", now).put("id", orderId).put("stage", stage)
+                    .put("entry", entry).put("sl", sl).put("tp", tp));
+        }
+    }
+
+    // Caller holds writeLock.
+    private void append(JSONObject rec) {
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            }
+            ByteBuffer buf = ByteBuffer.wrap((rec.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(false);
+        } catch (Exception e) {
+            System.err.println("[LEDGER] append failed: " + e.getMessage());
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException ignored) {}
+            channel = null;
+        }
+    }
+
+    // =========================================================================
+    // Queries
+    // =========================================================================
+    // 0 if the pair was never traded.
+    long lastPlaced(String pair) {
+        return lastPlaced.getOrDefault(pair, 0L);
+    }
+
+    List<Trade> byPair(String pair, long from, long to) {
+        List<Trade> l = byPair.get(pair);
+        if (l == null) return Collections.emptyList();
+        synchronized (writeLock) {
+            return slice(l, from, to);
+        }
+    }
+
+    List<Trade> between(long from, long to) {
+        synchronized (writeLock) {
+            return slice(all, from, to);
+        }
+    }
+
+    Trade get(String orderId) {
+        return byId.get(orderId);
+    }
+
+    int size() {
+        synchronized (writeLock) {
+            return all.size();
+        }
+    }
+
+    String stats() {
+        long dayAgo = System.currentTimeMillis() - 24 * 60 * 60 * 1000L;
+        return String.format("trades=%d | pairs=%d | last 24h=%d",
+                size(), byPair.size(), between(dayAgo, Long.MAX_VALUE).size());
+    }
+
+    private static List<Trade> slice(List<Trade> l, long from, long to) {
+        int lo = firstAtOrAfter(l, from), hi = firstAtOrAfter(l, to);
+        return lo >= hi ? Collections.emptyList() : new ArrayList<>(l.subList(lo, hi));
+    }
+
+    private static int firstAtOrAfter(List<Trade> l, long ts) {
+        int lo = 0, hi = l.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (l.get(mid).placedAt < ts) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // =========================================================================
+    // Load
+    // =========================================================================
+    void load() {
+        synchronized (writeLock) {
+            if (!Files.exists(file)) {
+                System.out.println("[LEDGER] No existing " + file + " — starting fresh.");
+                return;
+            }
+            int lines = 0, skipped = 0;
+            try {
+                dropTornTail();
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (line.isEmpty()) continue;
+                    try {
+                        replay(new JSONObject(line));
+                        lines++;
+                    } catch (Exception e) {
+                        skipped++;
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("[LEDGER] load stopped after " + lines + " record(s): " + e.getMessage());
+            }
+            long cooling = lastPlaced.values().stream()
+                    .filter(ts -> System.currentTimeMillis() - ts < CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.COOLDOWN_MS)
+                    .count();
+            System.out.println("[LEDGER] Loaded " + all.size() + " trade(s) on " + byPair.size() + " pair(s) from "
+                    + file + " (" + cooling + " pair(s) in cooldown" + (skipped > 0 ? ", " + skipped + " bad line(s) skipped" : "") + ")");
+        }
+    }
+
+    private void replay(JSONObject rec) {
+        String id = rec.getString("id");
+        long ts = rec.getLong("ts");
+        if ("placed".equals(rec.getString("ev"))) {
+            index(new Trade(id, rec.getString("pair"), rec.optString("side"), rec.optDouble("qty", 0),
+                    rec.optDouble("price", 0), ts));
+        } else {
+            Trade t = byId.get(id);
+            if (t != null) settle(t, rec.optString("stage"), rec.optDouble("entry", 0), rec.optDouble("sl", 0),
+                    rec.optDouble("tp", 0), ts);
+        }
+    }
+
+    // Caller holds writeLock.
+    private void index(Trade t) {
+        all.add(t);
+        byPair.computeIfAbsent(t.pair, k -> new ArrayList<>()).add(t);
+        byId.put(t.orderId, t);
+        lastPlaced.merge(t.pair, t.placedAt, Math::max);
+    }
+
+    private static void settle(Trade t, String stage, double entry, double sl, double tp, long ts) {
+        t.stage = stage;
+        t.entry = entry;
+        t.sl = sl;
+        t.tp = tp;
+        t.settledAt = ts;
+    }
+
+    // A crash mid-append leaves a line without its '\n'; cut it so the next
+    // record starts on a line of its own.
+    private void dropTornTail() throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(file.toFile(), "rw")) {
+            long len = f.length(), end = len;
+            while (end > 0) {
+                f.seek(end - 1);
+                if (f.read() == '\n') break;
+                end--;
+            }
+            if (end < len) {
+                f.setLength(end);
+                System.err.println("[LEDGER] dropped a torn last record (" + (len - end) + " bytes)");
+            }
+        }
+    }
+}
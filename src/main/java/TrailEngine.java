@@ -0,0 +1,270 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// Event-driven trailing SL/TP (replaces the commented-out trailOpenPositions
+// poll). Same continuous 1:1 rule as before — SL/TP kept at the ORIGINAL
+// entry gaps (TrailState) from the current price, only ever moved in the
+// position's favour — but driven by prices instead of a blocking sweep.
+//
+// Per pair the engine keeps a Trail: the position id, the SL/TP the
+// exchange currently holds, and a precomputed TRIGGER price — the first
+// price at which the rule would move SL or TP by at least one tick. A price
+// update (onPrice) is one map lookup and one comparison; only a price
+// beyond its trigger does any work, and that work (create_tpsl + the check
+// that it landed) runs on the engine's own threads:
+//
+//   onPrice -> crossed? -> [io] compute + setTpSl
+//           -> [timer, CONFIRM_DELAY_MS later] -> [io] re-read the position,
+//              take its SL/TP as the new baseline, re-arm the trigger
+//
+// While an update is in flight the pair ignores further prices, so a burst
+// of ticks never sends overlapping create_tpsl calls. Nothing sleeps.
+//
+// Prices currently come from a REST poll of the tracked pairs every
+// pollMs (one trade_history call each, fanned out on the io pool); any
+// other feed can call onPrice directly. Each poll round first re-syncs the
+// tracked set from the positions snapshot: closed positions are dropped,
+// new protected ones picked up, and the exchange's SL/TP wins over ours.
+// =============================================================================
+final class TrailEngine {
+
+    interface Exchange {
+        List<Position> positions() throws Exception;
+        Position position(String pair) throws Exception;
+        double lastPrice(String pair);
+        TickMath.Tick tick(String pair);
+        void setTpSl(String posId, double tp, double sl, String pair);
+    }
+
+    // Same settle time the old loop slept before re-reading the position.
+    private static final long CONFIRM_DELAY_MS = 1_500L;
+    private static final int  IO_THREADS       = 4;
+
+    static final class Trail {
+        final String  pair;
+        final String  posId;
+        final boolean isLong;
+        final double  entry, risk, reward;
+        final TickMath.Tick tick;
+        volatile double sl, tp;
+        volatile double trigger;
+        final AtomicBoolean inFlight = new AtomicBoolean();
+        final AtomicBoolean fetching = new AtomicBoolean();
+
+        Trail(String pair, String posId, boolean isLong, double entry, double risk, double reward,
+              TickMath.Tick tick, double sl, double tp) {
+            this.pair   = pair;
+            this.posId  = posId;
+            this.isLong = isLong;
+            this.entry  = entry;
+            this.risk   = risk;
+            this.reward = reward;
+            this.tick   = tick;
+            this.sl     = sl;
+            this.tp     = tp;
+            rearm();
+        }
+
+        // The nearest price at which SL or TP would improve by a tick, and
+        // the position is in profit (the old favorableMove > 0 check).
+        void rearm() {
+            trigger = isLong
+                    ? Math.max(Math.min(sl + risk, tp - reward) + tick.size, entry + tick.size)
+                    : Math.min(Math.max(sl - risk, tp + reward) - tick.size, entry - tick.size);
+        }
+
+        boolean crossed(double price) {
+            return isLong ? price >= trigger : price <= trigger;
+        }
+    }
+
+    private final Exchange exchange;
+    private final TrailJournal states;
+    private final Map<String, Trail> trails = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "trail-timer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService io = Executors.newFixedThreadPool(IO_THREADS, r -> {
+        Thread t = new Thread(r, "trail-io");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong prices    = new AtomicLong();
+    private final AtomicLong crossings = new AtomicLong();
+    private final AtomicLong updates   = new AtomicLong();
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong failed    = new AtomicLong();
+
+    TrailEngine(Exchange exchange, TrailJournal states) {
+        this.exchange = exchange;
+        this.states   = states;
+    }
+
+    void start(long pollMs) {
+        timer.scheduleWithFixedDelay(this::pollRound, 0, pollMs, TimeUnit.MILLISECONDS);
+        System.out.println("[TRAIL] Engine started (price poll every " + pollMs + "ms)");
+    }
+
+    void stop() {
+        timer.shutdownNow();
+        io.shutdownNow();
+    }
+
+    // =========================================================================
+    // Price path
+    // =========================================================================
+    void onPrice(String pair, double price) {
+        Trail t = trails.get(pair);
+        if (t == null || price <= 0) return;
+        prices.incrementAndGet();
+        if (!t.crossed(price)) return;
+        if (!t.inFlight.compareAndSet(false, true)) return;
+        crossings.incrementAndGet();
+        io.execute(() -> apply(t, price));
+    }
+
+    private void apply(Trail t, double price) {
+        try {
+            double curSL = t.sl, curTP = t.tp;
+            double targetSL = t.isLong ? price - t.risk   : price + t.risk;
+            double targetTP = t.isLong ? price + t.reward : price - t.reward;
+
+            // Only ever improve — never move SL/TP backward against the position.
+            boolean slImproved = t.isLong ? targetSL > curSL : targetSL < curSL;
+            boolean tpImproved = t.isLong ? targetTP > curTP : targetTP < curTP;
+            double newSL = slImproved ? CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.roundToTick(targetSL, t.tick) : curSL;
+            double newTP = tpImproved ? CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.roundToTick(targetTP, t.tick) : curTP;
+
+            // SL must never be <= 0 or on the wrong side of the current price.
+            double minGap = Math.max(t.tick.size, price * 0.0005);
+            boolean slInvalid = t.isLong
+                    ? (newSL <= 0 || newSL >= price - minGap)
+                    : (newSL <= price + minGap);
+            if (slInvalid) {
+                System.out.println("[TRAIL] " + t.pair + " — computed SL invalid (" + newSL + "), skipping");
+                t.inFlight.set(false);
+                return;
+            }
+            // Rounding can eat the improvement; don't spend a create_tpsl on it.
+            if (Math.abs(newSL - curSL) < t.tick.size && Math.abs(newTP - curTP) < t.tick.size) {
+                t.inFlight.set(false);
+                return;
+            }
+
+            System.out.printf("[TRAIL] %s | price=%.6f | SL %.6f -> %.6f | TP %.6f -> %.6f%n",
+                    t.pair, price, curSL, newSL, curTP, newTP);
+            updates.incrementAndGet();
+            exchange.setTpSl(t.posId, newTP, newSL, t.pair);
+            timer.schedule(() -> io.execute(() -> confirm(t, newSL, newTP)), CONFIRM_DELAY_MS, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            System.err.println("[TRAIL] apply(" + t.pair + "): " + e.getMessage());
+            t.inFlight.set(false);
+        }
+    }
+
+    private void confirm(Trail t, double sl, double tp) {
+        try {
+            Position p = exchange.position(t.pair);
+            boolean landed = p != null && Objects.equals(p.id(), t.posId)
+                    && Math.abs(p.stopLossTrigger() - sl) < t.tick.size / 2
+                    && Math.abs(p.takeProfitTrigger() - tp) < t.tick.size / 2;
+            if (landed) {
+                confirmed.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+                System.out.println("[TRAIL] WARNING: " + t.pair
+                        + " — SL/TP update could not be confirmed on exchange, will retry on a later price");
+            }
+            // Whatever the exchange holds is the new baseline.
+            if (p != null && p.stopLossTrigger() > 0 && p.takeProfitTrigger() > 0) {
+                t.sl = p.stopLossTrigger();
+                t.tp = p.takeProfitTrigger();
+                t.rearm();
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.err.println("[TRAIL] confirm(" + t.pair + "): " + e.getMessage());
+        } finally {
+            t.inFlight.set(false);
+        }
+    }
+
+    // =========================================================================
+    // Poll round: re-sync tracked positions, then fetch their prices
+    // =========================================================================
+    private void pollRound() {
+        try {
+            sync(exchange.positions());
+        } catch (Exception e) {
+            System.err.println("[TRAIL] sync failed, keeping current set: " + e.getMessage());
+        }
+        for (Trail t : trails.values()) {
+            if (t.inFlight.get() || !t.fetching.compareAndSet(false, true)) continue;
+            io.execute(() -> {
+                try {
+                    onPrice(t.pair, exchange.lastPrice(t.pair));
+                } finally {
+                    t.fetching.set(false);
+                }
+            });
+        }
+    }
+
+    void sync(List<Position> positions) {
+        Set<String> open = new HashSet<>();
+        for (Position p : positions) {
+            String pair = p.pair();
+            double avgPrice = p.avgPrice(), curSL = p.stopLossTrigger(), curTP = p.takeProfitTrigger();
+            boolean isOpen = p.activePos() != 0 || p.lockedMargin() > 0 || avgPrice > 0;
+            if (!isOpen || pair == null || pair.isEmpty()) continue;
+            open.add(pair);
+            // No TP/SL yet — ProtectionWorker handles those.
+            if (avgPrice <= 0 || curSL <= 0 || curTP <= 0 || p.id() == null) continue;
+
+            CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TrailState s = states.get(pair);
+            if (s == null) {
+                // Startup reconciliation normally covers this; guard anyway
+                // so a position is never silently left untrailed.
+                s = new CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TrailState();
+                s.isLong = p.activePos() >= 0;
+                s.entryPrice = avgPrice;
+                s.initialRisk = Math.abs(avgPrice - curSL);
+                s.initialReward = Math.abs(curTP - avgPrice);
+                states.put(pair, s);
+            }
+            if (s.initialRisk <= 0 || s.initialReward <= 0) continue;
+
+            Trail t = trails.get(pair);
+            if (t == null || !t.posId.equals(p.id()) || t.isLong != s.isLong) {
+                trails.put(pair, new Trail(pair, p.id(), s.isLong, s.entryPrice, s.initialRisk, s.initialReward,
+                        exchange.tick(pair), curSL, curTP));
+            } else if (!t.inFlight.get()) {
+                t.sl = curSL;
+                t.tp = curTP;
+                t.rearm();
+            }
+        }
+        trails.keySet().retainAll(open);
+        states.retainAll(open);
+    }
+
+    String stats() {
+        return String.format("tracked=%d | prices=%d | triggers crossed=%d | updates sent=%d | confirmed=%d | unconfirmed=%d",
+                trails.size(), prices.get(), crossings.get(), updates.get(), confirmed.get(), failed.get());
+    }
+}
@@ -0,0 +1,262 @@
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =============================================================================
+// Trail state (pair -> TrailState) with a write-ahead journal, replacing the
+// rewrite of the whole trail_state.json on every change.
+//
+//   trail_state.json          snapshot: {pair: state}, same format as before
+//   trail_state.json.journal  one JSON line per mutation since the snapshot:
+//                               {"op":"put","pair":..,"state":{..}}
+//                               {"op":"remove","pair":..}
+//
+//   - put/remove update the map and append one line: O(1), whatever the
+//     number of tracked pairs.
+//   - fsync is batched: the flusher forces the journal every FSYNC_MS when
+//     something was appended, so a burst of changes costs one fsync. The
+//     line is in the OS page cache when put() returns — a JVM crash loses
+//     nothing, a power cut at most FSYNC_MS.
+//   - Compaction (on load, and once COMPACT_AFTER records have piled up):
+//     snapshot to a tmp file, fsync, atomic rename over trail_state.json,
+//     then truncate the journal. A crash between rename and truncate only
+//     replays records the snapshot already holds, which lands on the same
+//     state.
+//   - load() replays the journal over the snapshot and skips a torn last
+//     line (a crash mid-append), then compacts it away.
+// =============================================================================
+final class TrailJournal {
+
+    private static final long FSYNC_MS      = 200L;
+    private static final int  COMPACT_AFTER = 1_000;
+
+    private final Path snapshot;
+    private final Path journal;
+    private final Map<String, CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TrailState> states =
+            new ConcurrentHashMap<>();
+
+    private final Object writeLock = new Object();
+    private FileChannel channel;  // guarded by writeLock
+    private boolean     dirty;    // appended since the last force()
+    private int         records;  // journal records since the last compaction
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "trail-journal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong appends     = new AtomicLong();
+    private final AtomicLong fsyncs      = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    TrailJournal(Path snapshot) {
+        this.snapshot = snapshot;
+        this.journal  = snapshot.resolveSibling(snapshot.getFileName() + ".journal");
+    }
+
+    // =========================================================================
+    // State
+    // =========================================================================
+    CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TrailState get(String pair) {
+        return states.get(pair);
+    }
+
+    boolean contains(String pair) {
+        return states.containsKey(pair);
+    }
+
+    int size() {
+        return states.size();
+    }
+
+    void put(String pair, CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TrailState s) {
+        synchronized (writeLock) {
+            states.put(pair, s);
+            append(new JSONObject().put("op", "put").put("pair", pair).put("state", s.toJson()));
+        }
+    }
+
+    void remove(String pair) {
+        synchronized (writeLock) {
+            if (states.remove(pair) == null) return;
+            append(new JSONObject().put("op", "remove").put("pair", pair));
+        }
+    }
+
+    // Drops every pair not in keep. true if anything was removed.
+    boolean retainAll(Collection<String> keep) {
+        boolean changed = false;
+        for (String pair : states.keySet()) {
+            if (keep.contains(pair)) continue;
+            remove(pair);
+            changed = true;
+        }
+        return changed;
+    }
+
+    Set<String> pairs() {
+        return states.keySet();
+    }
+
+    String stats() {
+        return String.format("pairs=%d | appends=%d | fsyncs=%d | compactions=%d",
+                states.size(), appends.get(), fsyncs.get(), compactions.get());
+    }
+
+    // =========================================================================
+    // Load / journal
+    // =========================================================================
+    void load() {
+        synchronized (writeLock) {
+            readSnapshot();
+            int replayed = replay();
+            System.out.println("[TRAIL] Loaded trail state for " + states.size() + " pair(s)"
+                    + (replayed > 0 ? " (" + replayed + " journal record(s) replayed)" : "") + ".");
+            compact();
+        }
+        flusher.scheduleWithFixedDelay(this::flush, FSYNC_MS, FSYNC_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void readSnapshot() {
+        try {
+            if (!Files.exists(snapshot)) {
+                System.out.println("[TRAIL] No existing " + snapshot + " — starting fresh.");
+                return;
+            }
+            String content = new String(Files.readAllBytes(snapshot), StandardCharsets.UTF_8);
+            if (content.trim().isEmpty()) return;
+            JSONObject root = new JSONObject(content);
+            for (String pair : root.keySet()) {
+                states.put(pair, CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TrailState.fromJson(root.getJSONObject(pair)));
+            }
+        } catch (Exception e) {
+            System.err.println("[TRAIL] snapshot unreadable (continuing from the journal): " + e.getMessage());
+        }
+    }
+
+    private int replay() {
+        int n = 0;
+        try (BufferedReader r = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                JSONObject rec;
+                try {
+                    rec = new JSONObject(line);
+                } catch (Exception e) {
+                    // Only the last append can be torn; nothing after it was acknowledged.
+                    System.err.println("[TRAIL] skipping torn journal record: " + e.getMessage());
+                    break;
+                }
+                String pair = rec.getString("pair");
+                if ("remove".equals(rec.optString("op"))) states.remove(pair);
+                else states.put(pair, CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TrailState.fromJson(rec.getJSONObject("state")));
+                n++;
+            }
+        } catch (NoSuchFileException e) {
+            // no journal yet
+        } catch (Exception e) {
+            System.err.println("[TRAIL] journal replay stopped after " + n + " record(s): " + e.getMessage());
+        }
+        return n;
+    }
+
+    // Caller holds writeLock.
+    private void append(JSONObject rec) {
+        try {
+            if (channel == null) openJournal(false);
+            ByteBuffer buf = ByteBuffer.wrap((rec.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) channel.write(buf);
+            dirty = true;
+            appends.incrementAndGet();
+            if (++records >= COMPACT_AFTER) flusher.execute(this::compactNow);
+        } catch (Exception e) {
+            System.err.println("[TRAIL] journal append failed: " + e.getMessage());
+            closeJournal();
+        }
+    }
+
+    private void openJournal(boolean truncate) throws IOException {
+        closeJournal();
+        channel = truncate
+                ? FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+    }
+
+    private void closeJournal() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        channel = null;
+    }
+
+    void flush() {
+        synchronized (writeLock) {
+            if (!dirty || channel == null) return;
+            try {
+                channel.force(false);
+                dirty = false;
+                fsyncs.incrementAndGet();
+            } catch (Exception e) {
+                System.err.println("[TRAIL] journal fsync failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // =========================================================================
+    // Compaction
+    // =========================================================================
+    private void compactNow() {
+        synchronized (writeLock) {
+            if (records >= COMPACT_AFTER) compact();
+        }
+    }
+
+    // Caller holds writeLock. On failure the journal is kept as it is, so
+    // nothing is lost; the next append retries once COMPACT_AFTER is reached.
+    private void compact() {
+        try {
+            Map<String, JSONObject> copy = new HashMap<>(states.size() * 2);
+            for (Map.Entry<String, CoinDCXFuturesTrader8C_BUY_SELL_NEW_LOGIC_THREE.TrailState> e : states.entrySet()) {
+                copy.put(e.getKey(), e.getValue().toJson());
+            }
+            Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.wrap(new JSONObject(copy).toString(2).getBytes(StandardCharsets.UTF_8));
+                while (buf.hasRemaining()) out.write(buf);
+                out.force(true);
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            openJournal(true);
+            channel.force(true);
+            dirty = false;
+            records = 0;
+            compactions.incrementAndGet();
+        } catch (Exception e) {
+            System.err.println("[TRAIL] compaction failed (journal kept): " + e.getMessage());
+        }
+    }
+}